@@ -0,0 +1,79 @@
+import flowgame.bench.Workload;
+
+// Runs each pipeline phase on a fresh FlowGame that shares the read-only
+//  parts (cells, colors, grid graph, variable tables) of a template parsed once in load().
+public class PuzzleWorkload implements Workload {
+    String puzzle;
+    FlowGame template;
+    // the variables of the template's color variables, where its direction
+    //  variables start
+    int colorVariables;
+
+    @Override
+    public void load(String puzzle){
+        this.puzzle = puzzle;
+        this.template = new FlowGame();
+        template.parsePuzzle(puzzle);
+        template.makeColorVariables();
+        colorVariables = template.numberOfVariables;
+        template.makeDirectionVariables(template.numberOfVariables);
+    }
+
+    private FlowGame fresh(){
+        FlowGame game = new FlowGame();
+        game.cells = template.cells;
+        game.rows = template.rows;
+        game.cols = template.cols;
+        game.colors = template.colors;
+        game.grid = template.grid;
+        return game;
+    }
+
+    @Override
+    public Object parsePuzzle(){
+        FlowGame game = new FlowGame();
+        game.parsePuzzle(puzzle);
+        return game.cells;
+    }
+
+    @Override
+    public Object makeDirectionVariables(){
+        FlowGame game = fresh();
+        game.colorVars = template.colorVars;
+        game.numberOfVariables = colorVariables;
+        game.makeDirectionVariables(game.numberOfVariables);
+        return game.directionVars;
+    }
+
+    @Override
+    public Object makeColorClauses(){
+        FlowGame game = fresh();
+        game.colorVars = template.colorVars;
+        game.numberOfVariables = template.numberOfVariables;
+        game.makeColorClauses();
+        return game.colorClauses;
+    }
+
+    @Override
+    public Object makeDirectionClauses(){
+        FlowGame game = fresh();
+        game.colorVars = template.colorVars;
+        game.directionVars = template.directionVars;
+        game.numberOfVariables = template.numberOfVariables;
+        game.makeDirectionClauses();
+        return game.directionClauses;
+    }
+
+    @Override
+    public Object solve(){
+        FlowGame game = fresh();
+        return game.reduceToSAT();
+    }
+
+    @Override
+    public Object solveBitboard(){
+        FlowGame game = fresh();
+        game.engine = FlowGame.Engine.BITBOARD;
+        return game.reduceToSAT();
+    }
+}
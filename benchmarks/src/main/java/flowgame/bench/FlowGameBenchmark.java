@@ -0,0 +1,96 @@
+package flowgame.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Every phase of the pipeline, and the whole solve, over the bundled
+//  puzzle corpus. Run through "gradle :benchmarks:jmh", which adds the gc
+//  profiler so allocation rates are reported next to the timings.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlowGameBenchmark {
+    @Param({
+            "regular_5x5_01.txt",
+            "regular_6x6_01.txt",
+            "regular_7x7_01.txt",
+            "regular_8x8_01.txt",
+            "regular_9x9_01.txt",
+            "extreme_8x8_01.txt",
+            "extreme_9x9_01.txt",
+            "extreme_9x9_30.txt",
+            "extreme_10x10_01.txt",
+            "extreme_10x10_30.txt",
+            "extreme_11x11_07.txt",
+            "extreme_11x11_15.txt",
+            "extreme_11x11_20.txt",
+            "extreme_11x11_30.txt",
+            "extreme_12x12_01.txt",
+            "extreme_12x12_02.txt",
+            "extreme_12x12_28.txt",
+            "extreme_12x12_29.txt",
+            "extreme_12x12_30.txt",
+            "jumbo_10x10_01.txt",
+            "jumbo_11x11_01.txt",
+            "jumbo_12x12_30.txt",
+            "jumbo_13x13_26.txt",
+            "jumbo_14x14_01.txt",
+            "jumbo_14x14_02.txt",
+            "jumbo_14x14_19.txt",
+            "jumbo_14x14_21.txt",
+            "jumbo_14x14_30.txt",
+            "unsolvable_cross.txt"})
+    String puzzle;
+
+    Workload workload;
+
+    @Setup
+    public void setup(){
+        workload = Workload.create();
+        workload.load(puzzle);
+    }
+
+    @Benchmark
+    public Object parsePuzzle(){
+        return workload.parsePuzzle();
+    }
+
+    @Benchmark
+    public Object makeDirectionVariables(){
+        return workload.makeDirectionVariables();
+    }
+
+    @Benchmark
+    public Object makeColorClauses(){
+        return workload.makeColorClauses();
+    }
+
+    @Benchmark
+    public Object makeDirectionClauses(){
+        return workload.makeDirectionClauses();
+    }
+
+    @Benchmark
+    public Object endToEnd(){
+        return workload.solve();
+    }
+
+    @Benchmark
+    public Object endToEndBitboard(){
+        return workload.solveBitboard();
+    }
+}
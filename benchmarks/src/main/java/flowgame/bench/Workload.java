@@ -0,0 +1,32 @@
+package flowgame.bench;
+
+// The operations the benchmarks time. FlowGame lives in the default
+//  package, which named packages cannot import, so PuzzleWorkload (default
+//  package) implements this and is loaded by name.
+public interface Workload {
+    // Parse the puzzle once and precompute what the single-phase benchmarks
+    //  need as input.
+    void load(String puzzle);
+
+    Object parsePuzzle();
+
+    Object makeDirectionVariables();
+
+    Object makeColorClauses();
+
+    Object makeDirectionClauses();
+
+    Object solve();
+
+    // End to end with BitboardSolver in place of the SAT route, which it
+    //  falls back to past its node budget.
+    Object solveBitboard();
+
+    static Workload create(){
+        try{
+            return (Workload)Class.forName("PuzzleWorkload").getDeclaredConstructor().newInstance();
+        }catch(ReflectiveOperationException e){
+            throw new IllegalStateException("PuzzleWorkload not on the classpath", e);
+        }
+    }
+}
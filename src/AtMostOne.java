@@ -0,0 +1,122 @@
+// Clauses stating that at most one of a set of variables is true.
+//
+//  PAIRWISE   n(n-1)/2 binary clauses, no auxiliary variables.
+//  LADDER     sequential counter: 3n-4 clauses, n-1 auxiliary variables.
+//  COMMANDER  groups of three under a commander variable, applied recursively
+//             to the commanders: O(n) clauses and about n/2 auxiliary variables.
+//
+//  Auxiliary variables are numbered from nextVariable upward and encode()
+//  returns the first variable it left unused. Clauses go straight into the
+//  sink, nothing is allocated.
+public class AtMostOne {
+    public enum Encoding { PAIRWISE, LADDER, COMMANDER }
+
+    static final int GROUP_SIZE = 3;
+
+    public static int encode(int[] vars, int from, int length, Encoding encoding,
+                             ClauseSink sink, int nextVariable){
+        switch(encoding){
+            case LADDER:
+                return ladder(vars, from, length, sink, nextVariable);
+            case COMMANDER:
+                return commander(vars, from, length, sink, nextVariable);
+            default:
+                pairwise(vars, from, length, sink);
+                return nextVariable;
+        }
+    }
+
+    public static int encode(int[] vars, Encoding encoding, ClauseSink sink, int nextVariable){
+        return encode(vars, 0, vars.length, encoding, sink, nextVariable);
+    }
+
+    // Number of auxiliary variables encode() uses for a set of the given size.
+    public static int auxiliaryCount(int length, Encoding encoding){
+        switch(encoding){
+            case LADDER:
+                return length > 1 ? length - 1 : 0;
+            case COMMANDER:
+                int count = 0;
+                while(length > 2 * GROUP_SIZE){
+                    length = (length + GROUP_SIZE - 1) / GROUP_SIZE;
+                    count += length;
+                }
+                return count;
+            default:
+                return 0;
+        }
+    }
+
+    public static void pairwise(int[] vars, int from, int length, ClauseSink sink){
+        for(int a = from;a < from + length;a++){
+            for(int b = a + 1;b < from + length;b++){
+                sink.add(-vars[a], -vars[b]);
+            }
+        }
+    }
+
+    // s_k is true when one of x_1..x_k is true:
+    //  x_k -> s_k,  s_{k-1} -> s_k,  x_k -> !s_{k-1}
+    public static int ladder(int[] vars, int from, int length, ClauseSink sink, int nextVariable){
+        if(length <= 1){
+            return nextVariable;
+        }
+        int previous = nextVariable;
+        sink.add(-vars[from], previous);
+        for(int k = 1;k < length - 1;k++){
+            int x = vars[from + k];
+            int current = nextVariable + k;
+            sink.add(-x, current);
+            sink.add(-previous, current);
+            sink.add(-x, -previous);
+            previous = current;
+        }
+        sink.add(-vars[from + length - 1], -previous);
+        return nextVariable + length - 1;
+    }
+
+    public static int commander(int[] vars, int from, int length, ClauseSink sink, int nextVariable){
+        return commander(vars, from, length, sink, nextVariable, false);
+    }
+
+    // When consecutive is set, the variables are from, from + 1, ... and vars
+    //  is ignored; this is how the commanders of one level feed the next.
+    private static int commander(int[] vars, int from, int length, ClauseSink sink,
+                                 int nextVariable, boolean consecutive){
+        if(length <= 2 * GROUP_SIZE){
+            for(int a = 0;a < length;a++){
+                for(int b = a + 1;b < length;b++){
+                    sink.add(-variable(vars, from, a, consecutive), -variable(vars, from, b, consecutive));
+                }
+            }
+            return nextVariable;
+        }
+        int firstCommander = nextVariable;
+        int groups = (length + GROUP_SIZE - 1) / GROUP_SIZE;
+        for(int g = 0;g < groups;g++){
+            int commander = firstCommander + g;
+            int start = g * GROUP_SIZE;
+            int end = Math.min(start + GROUP_SIZE, length);
+
+            // at most one in the group, and any member implies the commander
+            for(int a = start;a < end;a++){
+                int x = variable(vars, from, a, consecutive);
+                for(int b = a + 1;b < end;b++){
+                    sink.add(-x, -variable(vars, from, b, consecutive));
+                }
+                sink.add(-x, commander);
+            }
+            // the commander implies some member
+            sink.addLiteral(-commander);
+            for(int a = start;a < end;a++){
+                sink.addLiteral(variable(vars, from, a, consecutive));
+            }
+            sink.endClause();
+        }
+        return commander(null, firstCommander, groups, sink, firstCommander + groups, true);
+    }
+
+    private static int variable(int[] vars, int from, int k, boolean consecutive){
+        return consecutive ? from + k : vars[from + k];
+    }
+}
@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Solves a whole pack of puzzles concurrently on a bounded work-stealing
+//  pool. Every file may itself be a PuzzlePack of many puzzles; each file is
+//  read once and its puzzles are parsed from those bytes by the tasks.
+//  FlowGame keeps its clauses in mutable instance fields, so every puzzle
+//  gets its own FlowGame; nothing is shared between tasks. Results are
+//  reported in input order as soon as each one, and all before it, is done.
+public class BatchSolver {
+    int threads;
+    FlowGame.Engine engine = FlowGame.Engine.SAT;
+    // shared by every task when set, so repeated puzzles are solved once
+    SolutionCache cache;
+    // solver configurations raced per puzzle, on top of the pool's threads
+    int portfolio = 1;
+    // draws every solution after its status line when set; results then keep
+    //  their solutions
+    SolutionRenderer renderer;
+
+    public BatchSolver(int threads){
+        this.threads = threads;
+    }
+
+    public BatchSolver(int threads, FlowGame.Engine engine){
+        this.threads = threads;
+        this.engine = engine;
+    }
+
+    public static class Result {
+        Path path;
+        String name;
+        SolveStats stats;
+        Solution solution;
+        boolean parsed;
+        long nanos;
+    }
+
+    public List<Result> solve(List<Path> paths, PrintStream out) throws IOException {
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        try{
+            List<Future<Result>> futures = new ArrayList<>();
+            for(Path path : paths){
+                PuzzlePack pack = PuzzlePack.open(path);
+                for(int k = 0;k < pack.size();k++){
+                    int index = k;
+                    futures.add(pool.submit(() -> solveOne(path, pack, index, this)));
+                }
+            }
+            List<Result> results = new ArrayList<>();
+            for(Future<Result> future : futures){
+                Result result = future.get();
+                results.add(result);
+                if(out != null){
+                    print(out, result);
+                    if(renderer != null && result.solution != null){
+                        out.flush();
+                        renderer.render(result.solution);
+                        renderer.flush();
+                    }
+                }
+            }
+            return results;
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("batch interrupted", e);
+        }catch(ExecutionException e){
+            throw new IllegalStateException("batch task failed", e.getCause());
+        }finally{
+            pool.shutdownNow();
+        }
+    }
+
+    static Result solveOne(Path path, PuzzlePack pack, int index, BatchSolver batch){
+        long startTime = System.nanoTime();
+        FlowGame game = new FlowGame();
+        game.engine = batch.engine;
+        game.cache = batch.cache;
+        game.portfolio = batch.portfolio;
+        // the pool already keeps every core busy with whole puzzles
+        game.encodeThreads = 1;
+        Result result = new Result();
+        result.path = path;
+        result.name = pack.name(index);
+        result.stats = game.reduceToSAT(pack, index);
+        result.parsed = game.cells != null;
+        if(batch.renderer != null){
+            result.solution = game.solution;
+        }
+        result.nanos = System.nanoTime() - startTime;
+        return result;
+    }
+
+    static void print(PrintStream out, Result result){
+        String status = !result.parsed ? "invalid" : result.stats.isCached() ? "cached"
+                : result.stats.isSolved() ? "solved"
+                : result.stats.rejected() != PreCheck.Reason.OK ? result.stats.rejected().name().toLowerCase()
+                : "no solution";
+        out.printf("%-32s %-12s %10.3f ms  %d runs%s%n", result.name, status, result.nanos / 1e6,
+                result.stats.solveIterations(), result.stats.winner() == null ? "" : "  " + result.stats.winner());
+    }
+
+    // A directory means every .txt file in it; anything else is a glob such
+    //  as src/puzzles/jumbo_*.txt, matched against the files of its parent.
+    public static List<Path> resolve(String pattern) throws IOException {
+        Path path = Paths.get(pattern);
+        List<Path> paths = new ArrayList<>();
+        if(Files.isDirectory(path)){
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(path, "*.txt")){
+                files.forEach(paths::add);
+            }
+        }else{
+            Path directory = path.getParent() == null ? Paths.get(".") : path.getParent();
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)){
+                for(Path file : files){
+                    if(Files.isRegularFile(file) && matcher.matches(file.getFileName())){
+                        paths.add(file);
+                    }
+                }
+            }
+        }
+        paths.sort(null);
+        return paths;
+    }
+
+    // Usage: BatchSolver [--cache[=file]] [--portfolio[=n]] [--render[=ansi]] <directory | glob> [threads]
+    //                    [sat | bitboard]
+    public static void main(String[] args){
+        SolutionCache cache = null;
+        int portfolio = 1;
+        SolutionRenderer renderer = null;
+        while(args.length > 0 && args[0].startsWith("--")){
+            if(args[0].startsWith("--portfolio")){
+                portfolio = FlowGame.portfolioSize(args[0]);
+            }else if(args[0].startsWith("--render")){
+                renderer = FlowGame.renderer(args[0], System.out);
+            }else if(args[0].startsWith("--cache")){
+                try{
+                    cache = FlowGame.openCache(args[0]);
+                }catch(IOException e){
+                    System.out.println("Cannot open " + args[0] + ": " + e.getMessage());
+                    return;
+                }
+            }
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if(args.length == 0){
+            System.out.println("Usage: BatchSolver [--cache[=file]] [--portfolio[=n]] [--render[=ansi]] <directory | glob>"
+                    + " [threads] [sat | bitboard]");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        FlowGame.Engine engine = args.length > 2 ? FlowGame.Engine.valueOf(args[2].toUpperCase()) : FlowGame.Engine.SAT;
+        long startTime = System.nanoTime();
+        List<Result> results;
+        BatchSolver batch = new BatchSolver(threads, engine);
+        batch.cache = cache;
+        batch.portfolio = portfolio;
+        batch.renderer = renderer;
+        try{
+            results = batch.solve(resolve(args[0]), System.out);
+            if(cache != null){
+                cache.close();
+            }
+        }catch(IOException e){
+            System.out.println("Cannot read " + args[0] + ": " + e.getMessage());
+            return;
+        }
+        long duration = System.nanoTime() - startTime;
+
+        int solved = 0;
+        for(Result result : results){
+            if(result.stats.isSolved()){
+                solved++;
+            }
+        }
+        System.out.printf("%d puzzles, %d solved, %.3f ms on %d threads%n",
+                results.size(), solved, duration / 1e6, threads);
+        if(cache != null){
+            System.out.printf("cache: %d hits, %d misses, %d solutions%n", cache.hits(), cache.misses(), cache.size());
+        }
+    }
+}
@@ -0,0 +1,446 @@
+// Solves a puzzle directly by extending flows, without going through SAT.
+//
+//  The grid is kept as bitboards: one long[] per color with the cells that
+//  color occupies, and one with the cells still free, bit k standing for
+//  cell k = i * cols + j, spread over as many longs as the grid needs.
+//  Every color grows from both endpoints; the growing ends are its two
+//  heads, and the color is done once they are joined. Each step extends the
+//  head with the fewest legal moves, where a new cell may not touch the
+//  color anywhere but at the heads, the same rule the clauses express with
+//  direction types. After each move the search backs off when
+//
+//  - a free cell has fewer than two open neighbors (free cells and heads of
+//    unfinished colors), so no flow can pass through it;
+//  - the two heads of a color touch no common free region;
+//  - a free region touches no color at both its heads.
+//
+//  Regions are found by flood fill over the bitboards. All buffers are sized
+//  once in the constructor, so the search allocates nothing per node.
+public class BitboardSolver {
+    int rows;
+    int cols;
+    int cells;
+    int words;
+    int numColors;
+
+    long[] free;
+    // colorMasks[c * words + w]
+    long[] colorMasks;
+    long[] valid;
+    long[] firstColumn;
+    long[] lastColumn;
+    // neighborMasks[cell * words + w], the up to four cells around a cell
+    long[] neighborMasks;
+
+    int[] start;
+    // head[2 * c] and head[2 * c + 1], the two growing ends of color c
+    int[] head;
+    boolean[] complete;
+    int completeCount = 0;
+
+    // per depth: the move tried, and the legal moves of the chosen head
+    int[] moveHead;
+    int[] movePreviousHead;
+    int[] candidates;
+    int[] probe = new int[4];
+
+    // flood fill buffers
+    long[] open;
+    long[] region;
+    long[] frontier;
+    long[] remaining;
+    long[] shifted;
+    long[] atLeastOne;
+    long[] atLeastTwo;
+
+    long nodes = 0;
+    long nodeLimit = Long.MAX_VALUE;
+    volatile boolean stop = false;
+
+    public BitboardSolver(int rows, int cols, int numColors, int[] cellColor){
+        if(numColors > Long.SIZE){
+            throw new IllegalArgumentException("at most " + Long.SIZE + " colors, got " + numColors);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = rows * cols;
+        this.words = (cells + Long.SIZE - 1) / Long.SIZE;
+        this.numColors = numColors;
+        this.free = new long[words];
+        this.colorMasks = new long[numColors * words];
+        this.valid = new long[words];
+        this.firstColumn = new long[words];
+        this.lastColumn = new long[words];
+        this.neighborMasks = new long[cells * words];
+        this.start = new int[numColors];
+        this.head = new int[2 * numColors];
+        this.complete = new boolean[numColors];
+        this.moveHead = new int[cells + 1];
+        this.movePreviousHead = new int[cells + 1];
+        this.candidates = new int[(cells + 1) * 4];
+        this.open = new long[words];
+        this.region = new long[words];
+        this.frontier = new long[words];
+        this.remaining = new long[words];
+        this.shifted = new long[words];
+        this.atLeastOne = new long[words];
+        this.atLeastTwo = new long[words];
+
+        java.util.Arrays.fill(start, -1);
+        for(int cell = 0;cell < cells;cell++){
+            set(valid, cell);
+            if(cell % cols == 0){
+                set(firstColumn, cell);
+            }
+            if(cell % cols == cols - 1){
+                set(lastColumn, cell);
+            }
+            for(int[] delta : FlowGame.DELTAS){
+                int neighbor = neighbor(cell, delta);
+                if(neighbor >= 0){
+                    neighborMasks[cell * words + (neighbor >>> 6)] |= 1L << neighbor;
+                }
+            }
+            int color = cellColor[cell];
+            if(color < 0){
+                set(free, cell);
+                continue;
+            }
+            colorMasks[color * words + (cell >>> 6)] |= 1L << cell;
+            if(start[color] < 0){
+                start[color] = cell;
+                head[2 * color] = cell;
+            }else{
+                head[2 * color + 1] = cell;
+            }
+        }
+    }
+
+    public static BitboardSolver of(FlowGame game){
+        return new BitboardSolver(game.rows(), game.cols(), game.colors.keySet().size(), game.endpointColors());
+    }
+
+    // Returns SATSolver.SATISFIABLE, UNSATISFIABLE, or UNKNOWN when stopped
+    //  or out of nodes.
+    public int solve(){
+        nodes = 0;
+        boolean found = search(0);
+        if(found){
+            return SATSolver.SATISFIABLE;
+        }
+        return stop || nodes >= nodeLimit ? SATSolver.UNKNOWN : SATSolver.UNSATISFIABLE;
+    }
+
+    public void stop(){
+        stop = true;
+    }
+
+    private boolean search(int depth){
+        if(stop || ++nodes >= nodeLimit){
+            return false;
+        }
+        if(completeCount == numColors){
+            return isEmpty(free);
+        }
+
+        // the head of an unfinished color with the fewest legal moves
+        int best = -1;
+        int bestCount = 5;
+        // start from the head moved last, so ties keep extending one flow
+        int first = depth > 0 ? moveHead[depth - 1] : 0;
+        for(int k = 0;k < head.length && bestCount > 1;k++){
+            int side = (first + k) % head.length;
+            if(complete[side >> 1]){
+                continue;
+            }
+            int count = legalMoves(side, probe);
+            if(count == 0){
+                return false;
+            }
+            if(count < bestCount){
+                best = side;
+                bestCount = count;
+                System.arraycopy(probe, 0, candidates, depth * 4, count);
+            }
+        }
+
+        for(int k = 0;k < bestCount;k++){
+            int cell = candidates[depth * 4 + k];
+            move(depth, best, cell);
+            if(feasible() && search(depth + 1)){
+                return true;
+            }
+            undo(depth, cell);
+        }
+        return false;
+    }
+
+    // A head next to the other head has to join it; otherwise any free
+    //  neighbor that touches the color nowhere but at the heads.
+    private int legalMoves(int side, int[] moves){
+        int color = side >> 1;
+        int from = head[side];
+        int to = head[side ^ 1];
+        if(test(neighborMasks, from * words, to)){
+            moves[0] = to;
+            return 1;
+        }
+        int count = 0;
+        int colorBase = color * words;
+        for(int[] delta : FlowGame.DELTAS){
+            int cell = neighbor(from, delta);
+            if(cell < 0 || !test(free, 0, cell)){
+                continue;
+            }
+            boolean touches = false;
+            int base = cell * words;
+            for(int w = 0;w < words && !touches;w++){
+                long around = neighborMasks[base + w] & colorMasks[colorBase + w];
+                if(w == from >>> 6){
+                    around &= ~(1L << from);
+                }
+                if(w == to >>> 6){
+                    around &= ~(1L << to);
+                }
+                touches = around != 0;
+            }
+            if(!touches){
+                // hug walls and other flows: fewer free neighbors first
+                int k = count++;
+                while(k > 0 && freeNeighbors(moves[k - 1]) > freeNeighbors(cell)){
+                    moves[k] = moves[k - 1];
+                    k--;
+                }
+                moves[k] = cell;
+            }
+        }
+        return count;
+    }
+
+    private void move(int depth, int side, int cell){
+        int color = side >> 1;
+        moveHead[depth] = side;
+        movePreviousHead[depth] = head[side];
+        if(cell == head[side ^ 1]){
+            complete[color] = true;
+            completeCount++;
+        }else{
+            colorMasks[color * words + (cell >>> 6)] |= 1L << cell;
+            free[cell >>> 6] &= ~(1L << cell);
+            head[side] = cell;
+        }
+    }
+
+    private void undo(int depth, int cell){
+        int side = moveHead[depth];
+        int color = side >> 1;
+        if(complete[color]){
+            complete[color] = false;
+            completeCount--;
+        }else{
+            colorMasks[color * words + (cell >>> 6)] &= ~(1L << cell);
+            free[cell >>> 6] |= 1L << cell;
+            head[side] = movePreviousHead[depth];
+        }
+    }
+
+    private boolean feasible(){
+        // open cells: free ones plus the heads still to be joined
+        System.arraycopy(free, 0, open, 0, words);
+        for(int color = 0;color < numColors;color++){
+            if(!complete[color]){
+                set(open, head[2 * color]);
+                set(open, head[2 * color + 1]);
+            }
+        }
+
+        // every free cell needs two open neighbors, counted bit-parallel
+        java.util.Arrays.fill(atLeastOne, 0);
+        java.util.Arrays.fill(atLeastTwo, 0);
+        for(int[] delta : FlowGame.DELTAS){
+            shiftTowards(open, delta[0], shifted);
+            for(int w = 0;w < words;w++){
+                atLeastTwo[w] |= atLeastOne[w] & shifted[w];
+                atLeastOne[w] |= shifted[w];
+            }
+        }
+        for(int w = 0;w < words;w++){
+            if((free[w] & ~atLeastTwo[w]) != 0){
+                return false;
+            }
+        }
+
+        // every free region must serve some color at both ends, and every
+        //  color whose heads are not about to join needs such a region
+        long needed = 0;
+        for(int color = 0;color < numColors;color++){
+            if(!complete[color] && !test(neighborMasks, head[2 * color] * words, head[2 * color + 1])){
+                needed |= 1L << color;
+            }
+        }
+        long served = 0;
+        System.arraycopy(free, 0, remaining, 0, words);
+        for(int w = 0;w < words;w++){
+            while(remaining[w] != 0){
+                fill((w << 6) + Long.numberOfTrailingZeros(remaining[w]));
+                long serves = 0;
+                for(int color = 0;color < numColors;color++){
+                    if((needed & (1L << color)) != 0 && touches(region, head[2 * color]) && touches(region, head[2 * color + 1])){
+                        serves |= 1L << color;
+                    }
+                }
+                if(serves == 0){
+                    return false;
+                }
+                served |= serves;
+                for(int v = w;v < words;v++){
+                    remaining[v] &= ~region[v];
+                }
+            }
+        }
+        return served == needed;
+    }
+
+    // Flood fill the free region around seed into region.
+    private void fill(int seed){
+        java.util.Arrays.fill(region, 0);
+        set(region, seed);
+        boolean grew = true;
+        while(grew){
+            grew = false;
+            System.arraycopy(region, 0, frontier, 0, words);
+            for(int[] delta : FlowGame.DELTAS){
+                shiftTowards(frontier, delta[0], shifted);
+                for(int w = 0;w < words;w++){
+                    long added = shifted[w] & free[w] & ~region[w];
+                    if(added != 0){
+                        region[w] |= added;
+                        grew = true;
+                    }
+                }
+            }
+        }
+    }
+
+    // Cells whose neighbor in the given direction is in source: shifting by
+    //  one column or one row, masked so nothing wraps around an edge.
+    private void shiftTowards(long[] source, int direction, long[] out){
+        if(direction == FlowGame.LEFT){
+            shift(source, 1, out);
+            andNot(out, firstColumn);
+        }else if(direction == FlowGame.RIGHT){
+            shift(source, -1, out);
+            andNot(out, lastColumn);
+        }else if(direction == FlowGame.TOP){
+            shift(source, cols, out);
+        }else{
+            shift(source, -cols, out);
+        }
+        for(int w = 0;w < words;w++){
+            out[w] &= valid[w];
+        }
+    }
+
+    // out = source moved by distance bits, towards higher cells if positive.
+    private void shift(long[] source, int distance, long[] out){
+        int wordShift = Math.abs(distance) >>> 6;
+        int bitShift = Math.abs(distance) & 63;
+        for(int w = 0;w < words;w++){
+            int from = distance > 0 ? w - wordShift : w + wordShift;
+            long value = from >= 0 && from < words ? source[from] : 0;
+            if(bitShift != 0){
+                int carryFrom = distance > 0 ? from - 1 : from + 1;
+                long carry = carryFrom >= 0 && carryFrom < words ? source[carryFrom] : 0;
+                value = distance > 0 ? (value << bitShift) | (carry >>> (64 - bitShift))
+                        : (value >>> bitShift) | (carry << (64 - bitShift));
+            }
+            out[w] = value;
+        }
+    }
+
+    private void andNot(long[] bits, long[] mask){
+        for(int w = 0;w < words;w++){
+            bits[w] &= ~mask[w];
+        }
+    }
+
+    private boolean touches(long[] bits, int cell){
+        int base = cell * words;
+        for(int w = 0;w < words;w++){
+            if((neighborMasks[base + w] & bits[w]) != 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int freeNeighbors(int cell){
+        int count = 0;
+        int base = cell * words;
+        for(int w = 0;w < words;w++){
+            count += Long.bitCount(neighborMasks[base + w] & free[w]);
+        }
+        return count;
+    }
+
+    private int neighbor(int cell, int[] delta){
+        int i = cell / cols + delta[1];
+        int j = cell % cols + delta[2];
+        if(i < 0 || i >= rows || j < 0 || j >= cols){
+            return -1;
+        }
+        return i * cols + j;
+    }
+
+    private boolean isEmpty(long[] bits){
+        for(long word : bits){
+            if(word != 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void set(long[] bits, int cell){
+        bits[cell >>> 6] |= 1L << cell;
+    }
+
+    private static boolean test(long[] bits, int base, int cell){
+        return (bits[base + (cell >>> 6)] & (1L << cell)) != 0;
+    }
+
+    // The solution found by solve(): colors from the masks, flows by walking
+    //  each color from one endpoint to the other.
+    public Solution toSolution(char[] colorLetters){
+        Solution solution = new Solution(rows, cols, colorLetters);
+        for(int color = 0;color < numColors;color++){
+            int previous = -1;
+            int current = start[color];
+            while(true){
+                solution.colors[current] = (byte)color;
+                int next = -1;
+                for(int[] delta : FlowGame.DELTAS){
+                    int cell = neighbor(current, delta);
+                    if(cell >= 0 && cell != previous && test(colorMasks, color * words, cell)){
+                        next = cell;
+                        solution.flows[current] |= (byte)delta[0];
+                        break;
+                    }
+                }
+                if(previous >= 0){
+                    for(int[] delta : FlowGame.DELTAS){
+                        if(neighbor(current, delta) == previous){
+                            solution.flows[current] |= (byte)delta[0];
+                        }
+                    }
+                }
+                if(next < 0){
+                    break;
+                }
+                previous = current;
+                current = next;
+            }
+        }
+        return solution;
+    }
+}
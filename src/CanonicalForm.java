@@ -0,0 +1,255 @@
+import java.util.Arrays;
+
+// A puzzle brought to one canonical form under the 8 symmetries of the grid
+//  and any renaming of its colors, so that puzzles which are rotations,
+//  reflections or recolorings of each other share one fingerprint.
+//
+//  A symmetry optionally transposes the grid, then mirrors its rows, then
+//  its columns; colors of the mapped grid are renamed 0, 1, ... in the order
+//  they first appear, row by row. The canonical form is the smallest of the
+//  eight results, by shape and then cell by cell, and the fingerprint a
+//  128-bit hash of it. A solution converts to the canonical frame and back
+//  with toCanonical()/fromCanonical(), which map the flow bits as well.
+public class CanonicalForm {
+    static final int TRANSPOSE = 1;
+    static final int FLIP_ROWS = 2;
+    static final int FLIP_COLS = 4;
+    static final int SYMMETRIES = 8;
+
+    // FLOWS[s][flow] is flow with every direction bit mapped by symmetry s,
+    //  UNFLOWS[s] its inverse
+    static final byte[][] FLOWS = new byte[SYMMETRIES][16];
+    static final byte[][] UNFLOWS = new byte[SYMMETRIES][16];
+
+    static {
+        for(int s = 0;s < SYMMETRIES;s++){
+            for(int flow = 0;flow < 16;flow++){
+                int mapped = 0;
+                for(int[] delta : FlowGame.DELTAS){
+                    if((flow & delta[0]) != 0){
+                        mapped |= direction(s, delta[1], delta[2]);
+                    }
+                }
+                FLOWS[s][flow] = (byte)mapped;
+                UNFLOWS[s][mapped] = (byte)flow;
+            }
+        }
+    }
+
+    // the puzzle's grid
+    final int sourceRows;
+    final int sourceCols;
+    // the canonical grid
+    final int symmetry;
+    final int rows;
+    final int cols;
+    final byte[] cells;
+    // canonical color of every puzzle color and back
+    final byte[] rename;
+    final byte[] colorOf;
+    final Fingerprint fingerprint;
+
+    private CanonicalForm(int sourceRows, int sourceCols, int symmetry, byte[] cells, byte[] rename){
+        this.sourceRows = sourceRows;
+        this.sourceCols = sourceCols;
+        this.symmetry = symmetry;
+        this.rows = (symmetry & TRANSPOSE) != 0 ? sourceCols : sourceRows;
+        this.cols = (symmetry & TRANSPOSE) != 0 ? sourceRows : sourceCols;
+        this.cells = cells;
+        this.rename = rename;
+        this.colorOf = new byte[rename.length];
+        for(int c = 0;c < rename.length;c++){
+            colorOf[rename[c]] = (byte)c;
+        }
+        this.fingerprint = Fingerprint.of(rows, cols, cells);
+    }
+
+    public static CanonicalForm of(FlowGame game){
+        return of(game.rows(), game.cols(), game.colors.size(), game.cells);
+    }
+
+    static CanonicalForm of(int rows, int cols, int numColors, byte[] cells){
+        byte[] best = null;
+        byte[] bestRename = null;
+        int bestSymmetry = -1;
+        byte[] candidate = new byte[cells.length];
+        byte[] rename = new byte[numColors];
+        for(int s = 0;s < SYMMETRIES;s++){
+            if(bestSymmetry >= 0 && compareShape(s, bestSymmetry, rows, cols) > 0){
+                continue;
+            }
+            relabel(s, rows, cols, cells, candidate, rename);
+            if(best == null || compareShape(s, bestSymmetry, rows, cols) < 0
+                    || Arrays.compare(candidate, best) < 0){
+                if(best == null){
+                    best = new byte[cells.length];
+                    bestRename = new byte[numColors];
+                }
+                byte[] swap = best;
+                best = candidate;
+                candidate = swap;
+                swap = bestRename;
+                bestRename = rename;
+                rename = swap;
+                bestSymmetry = s;
+            }
+        }
+        return new CanonicalForm(rows, cols, bestSymmetry, best, bestRename);
+    }
+
+    // Map cells by symmetry s into out, renaming colors by first appearance.
+    private static void relabel(int s, int rows, int cols, byte[] cells, byte[] out, byte[] rename){
+        for(int cell = 0;cell < cells.length;cell++){
+            out[map(s, rows, cols, cell)] = cells[cell];
+        }
+        Arrays.fill(rename, FlowGame.FREE);
+        byte next = 0;
+        for(int k = 0;k < out.length;k++){
+            int color = out[k];
+            if(color != FlowGame.FREE){
+                if(rename[color] == FlowGame.FREE){
+                    rename[color] = next++;
+                }
+                out[k] = rename[color];
+            }
+        }
+    }
+
+    // Non-square grids come out rows x cols or cols x rows; the wider-first
+    //  shape sorts first.
+    private static int compareShape(int s, int t, int rows, int cols){
+        int rowsS = (s & TRANSPOSE) != 0 ? cols : rows;
+        int rowsT = (t & TRANSPOSE) != 0 ? cols : rows;
+        return Integer.compare(rowsS, rowsT);
+    }
+
+    // The cell of the mapped grid that cell of a rows x cols grid moves to.
+    static int map(int s, int rows, int cols, int cell){
+        int i = cell / cols;
+        int j = cell % cols;
+        if((s & TRANSPOSE) != 0){
+            int t = i;
+            i = j;
+            j = t;
+            t = rows;
+            rows = cols;
+            cols = t;
+        }
+        if((s & FLIP_ROWS) != 0){
+            i = rows - 1 - i;
+        }
+        if((s & FLIP_COLS) != 0){
+            j = cols - 1 - j;
+        }
+        return i * cols + j;
+    }
+
+    // The direction bit a step of (di, dj) becomes under symmetry s.
+    private static int direction(int s, int di, int dj){
+        if((s & TRANSPOSE) != 0){
+            int t = di;
+            di = dj;
+            dj = t;
+        }
+        if((s & FLIP_ROWS) != 0){
+            di = -di;
+        }
+        if((s & FLIP_COLS) != 0){
+            dj = -dj;
+        }
+        for(int[] delta : FlowGame.DELTAS){
+            if(delta[1] == di && delta[2] == dj){
+                return delta[0];
+            }
+        }
+        throw new IllegalArgumentException("not a grid step: " + di + ", " + dj);
+    }
+
+    // A solution of the puzzle in the canonical frame, colors renamed.
+    public Solution toCanonical(Solution solution){
+        Solution canonical = new Solution(rows, cols, null);
+        for(int cell = 0;cell < solution.colors.length;cell++){
+            int k = map(symmetry, sourceRows, sourceCols, cell);
+            canonical.colors[k] = rename[solution.colors[cell]];
+            canonical.flows[k] = FLOWS[symmetry][solution.flows[cell]];
+        }
+        return canonical;
+    }
+
+    // A solution in the canonical frame as a solution of the puzzle.
+    public Solution fromCanonical(Solution canonical, char[] colorLetters){
+        Solution solution = new Solution(sourceRows, sourceCols, colorLetters);
+        for(int cell = 0;cell < solution.colors.length;cell++){
+            int k = map(symmetry, sourceRows, sourceCols, cell);
+            solution.colors[cell] = colorOf[canonical.colors[k]];
+            solution.flows[cell] = UNFLOWS[symmetry][canonical.flows[k]];
+        }
+        return solution;
+    }
+
+    // 128-bit hash of a canonical grid: two 64-bit lanes over the cells,
+    //  eight at a time, with MurmurHash3's multipliers and finalizer.
+    public static final class Fingerprint {
+        static final long C1 = 0x87c37b91114253d5L;
+        static final long C2 = 0x4cf5ad432745937fL;
+
+        final long high;
+        final long low;
+
+        Fingerprint(long high, long low){
+            this.high = high;
+            this.low = low;
+        }
+
+        static Fingerprint of(int rows, int cols, byte[] cells){
+            long h1 = ((long)rows << 32) | cols;
+            long h2 = h1 ^ C1;
+            for(int k = 0;k < cells.length;k += 8){
+                long word = 0;
+                for(int b = k;b < Math.min(k + 8, cells.length);b++){
+                    word = (word << 8) | (cells[b] & 0xff);
+                }
+                h1 ^= Long.rotateLeft(word * C1, 31) * C2;
+                h1 = Long.rotateLeft(h1, 27) + h2;
+                h1 = h1 * 5 + 0x52dce729;
+                h2 ^= Long.rotateLeft(word * C2, 33) * C1;
+                h2 = Long.rotateLeft(h2, 31) + h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+            h1 ^= cells.length;
+            h2 ^= cells.length;
+            h1 += h2;
+            h2 += h1;
+            h1 = mix(h1);
+            h2 = mix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new Fingerprint(h1, h2);
+        }
+
+        private static long mix(long h){
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object other){
+            return other instanceof Fingerprint
+                    && ((Fingerprint)other).high == high && ((Fingerprint)other).low == low;
+        }
+
+        @Override
+        public int hashCode(){
+            return (int)low;
+        }
+
+        @Override
+        public String toString(){
+            return String.format("%016x%016x", high, low);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+// Anything that consumes clauses as DIMACS literals, one clause at a time.
+//  A clause is built with addLiteral() calls and closed with endClause();
+//  the add() helpers do both for short clauses.
+public interface ClauseSink {
+    void addLiteral(int literal);
+
+    void endClause();
+
+    // Number of clauses ended so far.
+    int clauseCount();
+
+    default void add(int a){
+        addLiteral(a);
+        endClause();
+    }
+
+    default void add(int a, int b){
+        addLiteral(a);
+        addLiteral(b);
+        endClause();
+    }
+
+    default void add(int a, int b, int c){
+        addLiteral(a);
+        addLiteral(b);
+        addLiteral(c);
+        endClause();
+    }
+
+    default void add(int[] clause, int from, int length){
+        for(int k = from;k < from + length;k++){
+            addLiteral(clause[k]);
+        }
+        endClause();
+    }
+}
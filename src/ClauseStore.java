@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+// A growable list of clauses backed by one contiguous int array.
+//
+//  Clause k occupies literals[offsets[k]] .. literals[offsets[k + 1] - 1], so
+//  adding a clause never allocates a per-clause object. Clauses can be added
+//  whole, or literal by literal with addLiteral() followed by endClause().
+public class ClauseStore implements ClauseSink {
+    int[] literals;
+    int literalCount = 0;
+    int[] offsets;
+    int size = 0;
+
+    public ClauseStore(){
+        this(1 << 10, 1 << 12);
+    }
+
+    public ClauseStore(int clauseCapacity, int literalCapacity){
+        this.literals = new int[Math.max(literalCapacity, 4)];
+        this.offsets = new int[Math.max(clauseCapacity, 4) + 1];
+    }
+
+    @Override
+    public void add(int a){
+        ensureLiterals(1);
+        literals[literalCount++] = a;
+        endClause();
+    }
+
+    @Override
+    public void add(int a, int b){
+        ensureLiterals(2);
+        literals[literalCount++] = a;
+        literals[literalCount++] = b;
+        endClause();
+    }
+
+    @Override
+    public void add(int a, int b, int c){
+        ensureLiterals(3);
+        literals[literalCount++] = a;
+        literals[literalCount++] = b;
+        literals[literalCount++] = c;
+        endClause();
+    }
+
+    public void add(int[] clause){
+        add(clause, 0, clause.length);
+    }
+
+    @Override
+    public void add(int[] clause, int from, int length){
+        ensureLiterals(length);
+        System.arraycopy(clause, from, literals, literalCount, length);
+        literalCount += length;
+        endClause();
+    }
+
+    // Append one literal to the clause under construction.
+    @Override
+    public void addLiteral(int literal){
+        ensureLiterals(1);
+        literals[literalCount++] = literal;
+    }
+
+    // Close the clause under construction.
+    @Override
+    public void endClause(){
+        if(size + 2 > offsets.length){
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[++size] = literalCount;
+    }
+
+    public void addAll(ClauseStore other){
+        ensureLiterals(other.literalCount);
+        if(size + other.size + 1 > offsets.length){
+            offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, size + other.size + 1));
+        }
+        System.arraycopy(other.literals, 0, literals, literalCount, other.literalCount);
+        for(int k = 1;k <= other.size;k++){
+            offsets[size + k] = literalCount + other.offsets[k];
+        }
+        literalCount += other.literalCount;
+        size += other.size;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    @Override
+    public int clauseCount(){
+        return size;
+    }
+
+    public int literalCount(){
+        return literalCount;
+    }
+
+    public int start(int clause){
+        return offsets[clause];
+    }
+
+    public int length(int clause){
+        return offsets[clause + 1] - offsets[clause];
+    }
+
+    public int literal(int clause, int index){
+        return literals[offsets[clause] + index];
+    }
+
+    // The backing array; clause k starts at start(k). Valid until the next add.
+    public int[] literals(){
+        return literals;
+    }
+
+    public void clear(){
+        size = 0;
+        literalCount = 0;
+    }
+
+    private void ensureLiterals(int extra){
+        if(literalCount + extra > literals.length){
+            literals = Arrays.copyOf(literals, Math.max(literals.length * 2, literalCount + extra));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Loads a DIMACS CNF file into a ClauseSink, usually a ClauseStore.
+//
+//  The file is read through a FileChannel in fixed-size chunks and literals
+//  are parsed straight from the bytes. Comment lines ("c ...") are skipped
+//  and a trailing "%" line, as found in SATLIB files, ends the input.
+public class DimacsReader {
+    static final int BUFFER_SIZE = 1 << 16;
+
+    // Returns the number of variables declared in the "p cnf" header.
+    public static int read(Path path, ClauseSink sink) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        int numVariables = 0;
+        boolean lineStart = true;
+        boolean comment = false;
+        boolean header = false;
+        int headerField = 0;
+        boolean inNumber = false;
+        boolean negative = false;
+        int value = 0;
+        boolean openClause = false;
+        boolean done = false;
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            while(!done && channel.read(buffer) != -1){
+                buffer.flip();
+                while(buffer.hasRemaining()){
+                    byte b = buffer.get();
+                    if(comment){
+                        if(b == '\n'){
+                            comment = false;
+                            lineStart = true;
+                        }
+                        continue;
+                    }
+                    if(lineStart && b == 'c'){
+                        comment = true;
+                        continue;
+                    }
+                    if(lineStart && b == 'p'){
+                        header = true;
+                        headerField = 0;
+                        lineStart = false;
+                        continue;
+                    }
+                    if(lineStart && b == '%'){
+                        done = true;
+                        break;
+                    }
+
+                    if(b == '-' || (b >= '0' && b <= '9')){
+                        lineStart = false;
+                        if(!inNumber){
+                            inNumber = true;
+                            negative = b == '-';
+                            value = negative ? 0 : b - '0';
+                        }else{
+                            value = value * 10 + (b - '0');
+                        }
+                        continue;
+                    }
+
+                    if(inNumber){
+                        int number = negative ? -value : value;
+                        inNumber = false;
+                        if(header){
+                            if(headerField++ == 0){
+                                numVariables = number;
+                            }
+                        }else if(number == 0){
+                            sink.endClause();
+                            openClause = false;
+                        }else{
+                            sink.addLiteral(number);
+                            openClause = true;
+                        }
+                    }
+                    if(b == '\n'){
+                        header = false;
+                        lineStart = true;
+                    }else if(b != ' ' && b != '\t' && b != '\r'){
+                        // the "cnf" keyword of the header
+                        lineStart = false;
+                    }
+                }
+                buffer.clear();
+            }
+        }
+
+        if(inNumber && !header){
+            int number = negative ? -value : value;
+            if(number != 0){
+                sink.addLiteral(number);
+                openClause = true;
+            }else{
+                sink.endClause();
+                openClause = false;
+            }
+        }
+        if(openClause){
+            sink.endClause();
+        }
+        return numVariables;
+    }
+}
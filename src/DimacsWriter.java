@@ -0,0 +1,160 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Streams clauses to a DIMACS CNF file through a FileChannel.
+//
+//  Literals are formatted into a reused ByteBuffer by hand, so no Strings are
+//  built per clause. When the counts are not known up front, a fixed-width
+//  "p cnf" header is reserved and patched in close() with the number of
+//  clauses seen and the variable count given by setVariableCount().
+public class DimacsWriter implements ClauseSink, Closeable {
+    static final int BUFFER_SIZE = 1 << 16;
+    static final int HEADER_DIGITS = 10;
+
+    FileChannel channel;
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    byte[] digits = new byte[11];
+    int numVariables;
+    int numClauses = 0;
+    boolean patchHeader;
+
+    // Header is patched on close().
+    public DimacsWriter(Path path) throws IOException {
+        open(path);
+        this.patchHeader = true;
+        writeHeader(0, 0);
+    }
+
+    // Header is written immediately from known counts.
+    public DimacsWriter(Path path, int numVariables, int numClauses) throws IOException {
+        open(path);
+        this.patchHeader = false;
+        this.numVariables = numVariables;
+        writeHeader(numVariables, numClauses);
+    }
+
+    private void open(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // Write every clause of the stores, with an exact header.
+    public static void write(Path path, int numVariables, ClauseStore... stores) throws IOException {
+        int numClauses = 0;
+        for(ClauseStore store : stores){
+            numClauses += store.size();
+        }
+        try(DimacsWriter writer = new DimacsWriter(path, numVariables, numClauses)){
+            for(ClauseStore store : stores){
+                writer.addAll(store);
+            }
+        }
+    }
+
+    public void addAll(ClauseStore store){
+        int[] literals = store.literals();
+        for(int k = 0;k < store.size();k++){
+            add(literals, store.start(k), store.length(k));
+        }
+    }
+
+    public void setVariableCount(int numVariables){
+        this.numVariables = numVariables;
+    }
+
+    @Override
+    public int clauseCount(){
+        return numClauses;
+    }
+
+    @Override
+    public void addLiteral(int literal){
+        ensureSpace(12);
+        putInt(literal);
+        buffer.put((byte)' ');
+    }
+
+    @Override
+    public void endClause(){
+        ensureSpace(2);
+        buffer.put((byte)'0');
+        buffer.put((byte)'\n');
+        numClauses++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try{
+            flush();
+            if(patchHeader){
+                channel.position(0);
+                writeHeader(numVariables, numClauses);
+                flush();
+            }
+        }finally{
+            channel.close();
+        }
+    }
+
+    // "p cnf <variables> <clauses>\n", numbers right-aligned in fixed-width
+    //  fields so the header can be rewritten in place.
+    private void writeHeader(int variables, int clauses){
+        buffer.put((byte)'p').put((byte)' ').put((byte)'c').put((byte)'n').put((byte)'f');
+        putPadded(variables);
+        putPadded(clauses);
+        buffer.put((byte)'\n');
+    }
+
+    private void putPadded(int value){
+        int length = toDigits(value);
+        for(int k = length;k <= HEADER_DIGITS;k++){
+            buffer.put((byte)' ');
+        }
+        putDigits(length);
+    }
+
+    private void putInt(int value){
+        if(value < 0){
+            buffer.put((byte)'-');
+            value = -value;
+        }
+        putDigits(toDigits(value));
+    }
+
+    // Fill digits[] back to front, return how many were written.
+    private int toDigits(int value){
+        int k = digits.length;
+        do{
+            digits[--k] = (byte)('0' + value % 10);
+            value /= 10;
+        }while(value > 0);
+        return digits.length - k;
+    }
+
+    private void putDigits(int length){
+        buffer.put(digits, digits.length - length, length);
+    }
+
+    private void ensureSpace(int bytes){
+        if(buffer.remaining() < bytes){
+            try{
+                flush();
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
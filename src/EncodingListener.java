@@ -0,0 +1,26 @@
+// Receives diagnostics from the encoders: variable and clause counts per
+//  category, phase timings and, when tracing() is on, per-cell detail.
+//
+//  FlowGame uses NONE unless a listener is set. Every method is a no-op by
+//  default, and the per-cell callbacks are only made after a tracing()
+//  check, so a disabled listener costs a field read per phase.
+public interface EncodingListener {
+    EncodingListener NONE = new EncodingListener() {};
+
+    default void variables(String category, int count){
+    }
+
+    default void clauses(String category, int count){
+    }
+
+    default void phase(String phase, long nanos){
+    }
+
+    default boolean tracing(){
+        return false;
+    }
+
+    // The direction variables of a non-endpoint cell, in DIRECTION_TYPES order.
+    default void cell(int i, int j, int[] directionTypes, int[] directionVars, int count){
+    }
+}
@@ -36,13 +36,20 @@
 //  The neighbors of a cell not specified by its direction type must not match its color.
 
 
+import java.nio.ByteBuffer;
 import java.nio.channels.FileLock;
 import java.util.*;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.net.URL;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.io.InputStreamReader;
 import java.util.concurrent.Flow;
 import java.util.Arrays;
 
@@ -59,11 +66,66 @@ public class FlowGame{
     static int BOTTOM_LEFT = BOTTOM | LEFT;
     static int BOTTOM_RIGHT = BOTTOM | RIGHT;
 
-    ArrayList<ArrayList<String>> puzzles;
+    // the parsed puzzle: cell i * cols + j holds the color index of its
+    //  endpoint, or FREE; null until a puzzle parses
+    byte[] cells;
+    int rows;
+    int cols;
+    static final byte FREE = -1;
+    static final int PARALLEL_CELLS = 256;
+    static final int MIN_BAND_ROWS = 4;
+    static final int BANDS_PER_THREAD = 4;
+    // most bundled puzzles take a few thousand nodes; the hard jumbo ones
+    //  millions, where SAT needs tens of milliseconds
+    static final long BITBOARD_NODES = 20_000;
     HashMap<String, Integer> colors;
-    HashMap<ArrayList<Integer>, HashMap<Integer,Integer>> directionDict;
-    ArrayList<int[]> colorClauses = new ArrayList<>();
-    ArrayList<int[]> directionClauses = new ArrayList<>();
+    // colorVars[cell * colors + c] is the variable for color c at cell, or
+    //  SimplifyingSink.TRUE / FALSE when propagation fixed it
+    int[] colorVars;
+    // directionVars[cell * 6 + m] is the variable for DIRECTION_TYPES[m] at
+    //  cell = i * cols + j, or 0 when that direction type does not fit the cell
+    int[] directionVars;
+    ClauseStore colorClauses = new ClauseStore();
+    ClauseStore directionClauses = new ClauseStore();
+    ClauseStore cycleClauses = new ClauseStore();
+    int solveIterations;
+    int numberOfVariables;
+    boolean[] model;
+    Solution solution;
+    // neighbors of every cell, labelled with direction bits; see grid()
+    Graph grid;
+    AtMostOne.Encoding colorEncoding = AtMostOne.Encoding.PAIRWISE;
+    // SAT reduces to clauses for SATSolver, BITBOARD searches for flows
+    //  directly with BitboardSolver and falls back to SAT after bitboardNodes
+    //  search nodes; Long.MAX_VALUE searches without bound
+    public enum Engine { SAT, BITBOARD }
+    Engine engine = Engine.SAT;
+    long bitboardNodes = BITBOARD_NODES;
+    // run Propagation before encoding; its domains, once computed, limit
+    //  which variables and clauses the make* methods generate
+    boolean propagate = true;
+    Propagation propagation;
+    EncodingListener listener = EncodingListener.NONE;
+    // threads for the clause encoders on grids of PARALLEL_CELLS or more; the
+    //  clauses come out the same for any number, see RowBands
+    int encodeThreads = Runtime.getRuntime().availableProcessors();
+    // race this many solver configurations per puzzle, see Portfolio; 1 to
+    //  solve sequentially
+    int portfolio = 1;
+    // bytes RowBands and Portfolio threads allocated for this game, not yet
+    //  counted by a SolveStats phase
+    long workerAllocatedBytes;
+    // the configuration that won the last portfolio race
+    Portfolio.Config winner;
+    long winnerNanos;
+    // set by stop(), from any thread, along with the solver at work
+    volatile boolean stopped = false;
+    volatile SATSolver activeSolver;
+    volatile BitboardSolver activeBitboard;
+    volatile Portfolio activePortfolio;
+    // solutions shared between games, looked up before the puzzle is checked
+    //  or encoded; null to always solve
+    SolutionCache cache;
 
 
     static int[][] DELTAS =  {
@@ -117,79 +179,143 @@ public class FlowGame{
     }};
 
 
-    public void parsePuzzle(String filePosition){
-        //InputStream input = getClass().getResourceAsStream("ListStopWords.txt");
+    // Parse a bundled puzzle; false if it does not load or parse.
+    public boolean parsePuzzle(String filePosition){
+        // read through the class loader so the puzzles also load from a jar
         String relativeFilePosition = "puzzles/" + filePosition;
-        URL relativeFileURL = getClass().getResource(relativeFilePosition);
-        File gameFile = new File(relativeFileURL.getPath());
-        ArrayList<String> game = new ArrayList<>();
-        HashMap<String, Integer> colors = new HashMap<>();
+        InputStream input = getClass().getResourceAsStream(relativeFilePosition);
+        if(input == null){
+            System.out.println("FLOW GAME File Error");
+            return false;
+        }
+        try{
+            return parseFirst(PuzzlePack.read(input, filePosition));
+        }catch(IOException e){
+            System.out.println("FLOW GAME File Error");
+            return false;
+        }
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(gameFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                //System.out.println(line);
-                game.add(line);
-            }
-        } catch (Exception e){
-            e.printStackTrace();
+    // Parse a puzzle file from anywhere on the filesystem; of a pack, the
+    //  first puzzle.
+    public boolean parsePuzzle(Path path){
+        try{
+            return parseFirst(PuzzlePack.open(path));
+        }catch(IOException e){
+            System.out.println("FLOW GAME File Error");
+            return false;
         }
+    }
 
-        int row = game.size();
-        int col = game.get(0).length();
-        ArrayList<Integer> colorCount = new ArrayList<>();
+    private boolean parseFirst(PuzzlePack pack){
+        if(pack.size() == 0){
+            System.out.println("FLOW GAME File Error");
+            return false;
+        }
+        return pack.load(0, this);
+    }
 
-        for(int i = 0;i < row;i++){
-            if(game.get(i).length() != col){
+    // Parse the puzzle text bytes[start, end) straight into cells: one line
+    //  per row, letters are endpoints and anything else is a free cell.
+    //  Leaves the game untouched and returns false if the rows differ in
+    //  length or a color does not have exactly two endpoints.
+    boolean parsePuzzle(ByteBuffer bytes,int start,int end){
+        int rows = 0;
+        int cols = -1;
+        for(int lineStart = start;lineStart < end;lineStart = lineEnd(bytes, lineStart, end) + 1){
+            int width = contentEnd(bytes, lineStart, end) - lineStart;
+            if(width == 0){
+                continue;
+            }
+            if(cols >= 0 && width != cols){
                 System.out.println("FLOW GAME File Error");
-                return;
+                return false;
             }
-            for(int j = 0;j < col;j ++){
-                char currentChar = game.get(i).charAt(j);
-                if( (currentChar > 'a' && currentChar < 'z') ||(currentChar > 'A' && currentChar < 'Z')){
-                    String currentStr = String.valueOf(game.get(i).charAt(j));
-                    if(colors.containsKey(currentStr)){
-                        int currentColor = colors.get(currentStr);
-                        colorCount.set(currentColor,1);
-                    }else{
-                        int size = colors.keySet().size();
-                        colors.put(currentStr,size);
-                        colorCount.add(0);
+            cols = width;
+            rows++;
+        }
+        if(rows == 0){
+            System.out.println("FLOW GAME File Error");
+            return false;
+        }
+
+        byte[] cells = new byte[Math.multiplyExact(rows, cols)];
+        HashMap<String, Integer> colors = new HashMap<>();
+        byte[] letterColor = new byte[128];
+        Arrays.fill(letterColor, FREE);
+        int[] endpoints = new int[letterColor.length];
+        int cell = 0;
+        for(int lineStart = start;lineStart < end;lineStart = lineEnd(bytes, lineStart, end) + 1){
+            int lineEnd = contentEnd(bytes, lineStart, end);
+            for(int k = lineStart;k < lineEnd;k++){
+                byte currentChar = bytes.get(k);
+                if( (currentChar >= 'a' && currentChar <= 'z') ||(currentChar >= 'A' && currentChar <= 'Z')){
+                    if(letterColor[currentChar] == FREE){
+                        letterColor[currentChar] = (byte)colors.size();
+                        colors.put(String.valueOf((char)currentChar), colors.size());
                     }
+                    endpoints[letterColor[currentChar]]++;
+                    cells[cell++] = letterColor[currentChar];
+                }else{
+                    cells[cell++] = FREE;
                 }
             }
         }
 
-        for(int i = 0;i < colorCount.size();i++){
-            if(colorCount.get(i) != 1){
+        for(int i = 0;i < colors.size();i++){
+            if(endpoints[i] != 2){
                 System.out.println("Error Puzzles");
-                return;
+                return false;
             }
         }
 
-
         this.colors = colors;
-        //this.puzzles = puzzle;
-        this.puzzles = new ArrayList<>();
-        this.directionDict = new HashMap<>();
-
-        for(int i = 0;i < game.size();i++){
-            this.puzzles.add(new ArrayList<String>());
-            String curStr = game.get(i);
-            for(int j = 0;j < game.get(i).length();j++){
-                this.puzzles.get(i).add(Character.toString(curStr.charAt(j)));
-            }
+        this.cells = cells;
+        this.rows = rows;
+        this.cols = cols;
+        forgetSolve();
+        return true;
+    }
+
+    // Drop what the last solve derived from the previous puzzle.
+    private void forgetSolve(){
+        this.grid = null;
+        this.propagation = null;
+        this.solution = null;
+        this.model = null;
+        colorClauses.clear();
+        directionClauses.clear();
+        cycleClauses.clear();
+    }
+
+    // Index of the '\n' ending the line at lineStart, or end.
+    private static int lineEnd(ByteBuffer bytes,int lineStart,int end){
+        int k = lineStart;
+        while(k < end && bytes.get(k) != '\n'){
+            k++;
+        }
+        return k;
+    }
+
+    // End of the line at lineStart without its line break.
+    private static int contentEnd(ByteBuffer bytes,int lineStart,int end){
+        int k = lineEnd(bytes, lineStart, end);
+        if(k > lineStart && bytes.get(k - 1) == '\r'){
+            k--;
         }
+        return k;
     }
 
     public void printPuzzle(){
         // If there is no info in this class then it will print error message
-        if(this.puzzles.size() == 0){
+        if(this.cells == null){
             System.out.println("No Puzzle");
         }else{
-            for(int i = 0 ;i < this.puzzles.size();i++){
-                for(int j = 0;j < this.puzzles.get(i).size();j++){
-                    System.out.printf("%4s", this.puzzles.get(i).get(j));
+            char[] colorLetters = colorLetters();
+            for(int i = 0 ;i < rows;i++){
+                for(int j = 0;j < cols;j++){
+                    byte cell = this.cells[i * cols + j];
+                    System.out.printf("%4s", cell == FREE ? '.' : colorLetters[cell]);
                 }
                 System.out.print("\n");
             }
@@ -200,343 +326,953 @@ public class FlowGame{
 
     public void makeDirectionVariables(int startVariable) {
 
-        int puzzleSize = puzzles.size();
+        long startTime = System.nanoTime();
+        int rows = rows();
+        int cols = cols();
+        Graph grid = grid();
         int numberOfVariable = startVariable;
+        int numTypes = FlowGame.DIRECTION_TYPES.length;
+        this.directionVars = new int[Math.multiplyExact(Math.multiplyExact(rows, cols), numTypes)];
 
-        for(int i = 0;i < puzzleSize;i++){
-            for(int j = 0;j < puzzleSize;j++){
+        for(int i = 0;i < rows;i++){
+            for(int j = 0;j < cols;j++){
 
-                char currentChar = this.puzzles.get(i).get(j).toCharArray()[0];
-                if( (currentChar >= 'a' && currentChar <= 'z') ||(currentChar >= 'A' && currentChar <= 'Z')) {
+                if(this.cells[i * cols + j] != FREE){
                     continue;
                 }
 
-                int[][] neighbors = FlowGame.validNeighbors(puzzleSize,i,j);
-                int[] neighborsDirBit = new int[neighbors.length];
+                int cell = i * cols + j;
                 int cellFlags = 0;
-                for(int n = 0; n < neighbors.length;n++){
-                    neighborsDirBit[n] = neighbors[n][0];
-                    cellFlags |= neighbors[n][0];
+                for(int e = grid.start(cell);e < grid.end(cell);e++){
+                    cellFlags |= grid.label(e);
                 }
 
-//                int[] position = {i,j};
-                ArrayList<Integer> position = new ArrayList<>();
-                position.add(i);
-                position.add(j);
-
-                HashMap<Integer,Integer> dirDict = new HashMap<>();
+                int base = cell * numTypes;
+                if(propagation != null && propagation.isTypeFixed(cell)){
+                    this.directionVars[base + Integer.numberOfTrailingZeros(propagation.types[cell])] = SimplifyingSink.TRUE;
+                    continue;
+                }
                //System.out.printf("%5d %5d %5d \n",i,j,cellFlags);
-                for(int m = 0;m < FlowGame.DIRECTION_TYPES.length;m++){
+                for(int m = 0;m < numTypes;m++){
                     int code = FlowGame.DIRECTION_TYPES[m];
-                    if((cellFlags & code) == code){
-                        numberOfVariable += 1;
-                        dirDict.put(code, numberOfVariable);
+                    if((cellFlags & code) == code && (propagation == null || propagation.hasType(cell,m))){
+                        numberOfVariable = FlowGame.addVariables(numberOfVariable,1);
+                        this.directionVars[base + m] = numberOfVariable;
                         //System.out.printf("%5s : %4d",FlowGame.DIRECTION_CHARS.get(code),numberOfVariable);
                     }
                 }
                 //System.out.print("\n");
-                this.directionDict.put(position,dirDict);
             }
         }
 
-        System.out.println("numberOfVariable: " + numberOfVariable);
+        this.numberOfVariables = numberOfVariable;
+        listener.variables("direction", numberOfVariable - startVariable);
+        listener.phase("direction variables", System.nanoTime() - startTime);
+    }
+
+
+    // The color variable of the unpropagated numbering, for a grid cols wide.
+    public static int colorVar(int i,int j,int color,int cols,int colorNum){
+        return Math.addExact(Math.multiplyExact(Math.addExact(Math.multiplyExact(i,cols),j),colorNum),color + 1);
     }
 
+    // Variables are ints, and Integer.MAX_VALUE is SimplifyingSink.TRUE, so
+    //  every new variable goes through here to fail loudly instead of
+    //  wrapping around. Returns last + count.
+    static int addVariables(int last,int count){
+        int next = Math.addExact(last,count);
+        if(next >= SimplifyingSink.TRUE){
+            throw new ArithmeticException("more variables than fit in an int: " + ((long)last + count));
+        }
+        return next;
+    }
 
-    public static int colorVar(int i,int j,int color,int puzzleSize,int colorNum){
-        return (i * puzzleSize + j) * colorNum + color + 1;
+    // Row bands for the clause encoders: a single one, encoded in place, for
+    //  one thread, a small grid or a listener tracing cells in order; else
+    //  BANDS_PER_THREAD per thread, each at least MIN_BAND_ROWS rows high.
+    int bandCount(){
+        if(encodeThreads <= 1 || cells.length < PARALLEL_CELLS || listener.tracing()){
+            return 1;
+        }
+        return Math.max(1, Math.min(encodeThreads * BANDS_PER_THREAD, rows() / MIN_BAND_ROWS));
     }
 
     public void makeDirectionClauses(){
+        makeDirectionClauses(directionClauses);
+    }
+
+    // Generate the direction clauses into any sink, e.g. a DimacsWriter.
+    public void makeDirectionClauses(ClauseSink sink){
 
+        long startTime = System.nanoTime();
+        int start = sink.clauseCount();
+        int bands = bandCount();
+        int[] typeClauses = new int[bands];
+        grid();
+        workerAllocatedBytes += RowBands.encode(encodeThreads, rows(), bands, sink,
+                (bandSink, band, fromRow, toRow) -> typeClauses[band] = makeDirectionClauses(bandSink, fromRow, toRow));
+        int types = 0;
+        for(int count : typeClauses){
+            types += count;
+        }
+
+        listener.clauses("direction type", types);
+        listener.clauses("direction color", sink.clauseCount() - start - types);
+        listener.phase("direction clauses", System.nanoTime() - startTime);
+    }
+
+    // The direction clauses of rows fromRow until toRow. Returns how many of
+    //  them are direction type clauses.
+    private int makeDirectionClauses(ClauseSink sink,int fromRow,int toRow){
+        if(propagation != null){
+            sink = new SimplifyingSink(sink);
+        }
+        boolean tracing = listener.tracing();
+        int typeClauses = 0;
         int numColors = colors.keySet().size();
-        int puzzleSize = puzzles.size();
+        int cols = cols();
+        int numTypes = FlowGame.DIRECTION_TYPES.length;
+        int[] cellDirectionVars = new int[numTypes];
+        int[] cellDirectionTypes = new int[numTypes];
+        Graph grid = grid();
 
-        for(int i = 0;i < puzzleSize;i++){
-            for(int j = 0;j < puzzleSize;j++) {
+        for(int i = fromRow;i < toRow;i++){
+            for(int j = 0;j < cols;j++) {
 
-                char currentChar = this.puzzles.get(i).get(j).toCharArray()[0];
-                if( (currentChar >= 'a' && currentChar <= 'z') ||(currentChar >= 'A' && currentChar <= 'Z')) {
+                if(this.cells[i * cols + j] != FREE){
                     continue;
                 }
 
 
-                ArrayList<Integer> position = new ArrayList<>();
-                position.add(i);
-                position.add(j);
-                HashMap<Integer,Integer> cellDirectionDict = this.directionDict.get(position);
-                System.out.println("Position: [" + i + ", " + j + "] -> " + cellDirectionDict);
-                int[] cellDirectionVars = new int[cellDirectionDict.keySet().size()];
+                int base = (i * cols + j) * numTypes;
                 int n = 0;
-                for(int dir : FlowGame.DIRECTION_TYPES){
-                    if(cellDirectionDict.containsKey(dir)) {
-                        cellDirectionVars[n] = cellDirectionDict.get(dir);
+                for(int m = 0;m < numTypes;m++){
+                    if(this.directionVars[base + m] != 0) {
+                        cellDirectionTypes[n] = FlowGame.DIRECTION_TYPES[m];
+                        cellDirectionVars[n] = this.directionVars[base + m];
                         n++;
                     }
                 }
+                if(tracing){
+                    listener.cell(i,j,cellDirectionTypes,cellDirectionVars,n);
+                }
+                int before = sink.clauseCount();
                 // Can only have one direction
-                directionClauses.add(cellDirectionVars);
+                sink.add(cellDirectionVars,0,n);
 
-                // no two neighbors have this color
-                int[][] noTwoSameDirectionClauses = FlowGame.noTwoPairs(cellDirectionVars);
-                for(int k = 0;k < noTwoSameDirectionClauses.length;k++){
-                    if(!directionClauses.contains(noTwoSameDirectionClauses[k])){
-                        directionClauses.add(noTwoSameDirectionClauses[k]);
-                    }
-                }
+                // no two direction types at once
+                AtMostOne.pairwise(cellDirectionVars,0,n,sink);
+                typeClauses += sink.clauseCount() - before;
 
+                int cell = i * cols + j;
                 for(int m = 0; m < numColors;m ++){
+                    // a color the cell cannot take needs no clauses: the
+                    //  neighbor's own at-most-one already implies them
+                    if(propagation != null && !propagation.hasColor(cell,m)){
+                        continue;
+                    }
                     // Get Color Variable for this Cell
-                    int color_1 = FlowGame.colorVar(i,j,m,puzzleSize,numColors);
+                    int color_1 = this.colorVars[cell * numColors + m];
 
                     // for each neighbor
-                    int[][] neighbors = FlowGame.allNeighbors(puzzleSize,i,j);
-                    for(int k = 0;k < neighbors.length;k++){
-                        int direction = neighbors[k][0];
-                        int currI = neighbors[k][1];
-                        int currJ = neighbors[k][2];
+                    for(int e = grid.start(cell);e < grid.end(cell);e++){
+                        int direction = grid.label(e);
                         // Get Color Variable for Other Cell
-                        int color_2 = FlowGame.colorVar(currI,currJ,m,puzzleSize,numColors);
+                        int color_2 = this.colorVars[grid.target(e) * numColors + m];
 
-                        for ( Integer directionType : cellDirectionDict.keySet() ) {
-                            Integer directionVariable = cellDirectionDict.get(directionType);
+                        for(int t = 0;t < n;t++){
+                            int directionType = cellDirectionTypes[t];
+                            int directionVariable = cellDirectionVars[t];
 
                             // if neighbor is hit by this direction type
                             if((directionType & direction) > 0){
                                 // this direction type implies the colors are equal
                                 // If dir_var is true, then color1 must equal to color2
-                                int[] pair1 = {-directionVariable,-color_1,color_2};
-                                int[] pair2 = {-directionVariable,color_1,-color_2};
-                                directionClauses.add(pair1);
-                                directionClauses.add(pair2);
-                            }else if(FlowGame.validPosition(puzzleSize,currI,currJ)){
+                                sink.add(-directionVariable,-color_1,color_2);
+                                sink.add(-directionVariable,color_1,-color_2);
+                            }else{
                                 // neighbor is not along this direction type,
                                 // so this direction type implies the colors are not equal
-                                int[] pair3 = {-directionVariable,-color_1,-color_2};
-                                directionClauses.add(pair3);
+                                sink.add(-directionVariable,-color_1,-color_2);
                             }
                         }
                     }
                 }
             }
         }
-
+        return typeClauses;
     }
 
+    // Auxiliary variables of the at-most-one encodings are numbered after the
+    //  direction variables, so makeDirectionVariables() has to run first
+    //  unless colorEncoding is PAIRWISE.
     public void makeColorClauses(){
-        int numColors = colors.keySet().size();
-        int puzzleSize = puzzles.size();
-        ArrayList<String> colorsSet = new ArrayList<>(colors.keySet());
+        makeColorClauses(colorClauses);
+    }
 
+    // Generate the color clauses into any sink, e.g. a DimacsWriter.
+    //  Every band numbers its auxiliary variables from its own base, the
+    //  prefix sum of the counts of the bands before it, which is the
+    //  numbering a single pass gives them.
+    public void makeColorClauses(ClauseSink sink){
+        long startTime = System.nanoTime();
+        int rows = rows();
+        int firstAuxiliary = numberOfVariables;
+        int start = sink.clauseCount();
+        if(colorEncoding != AtMostOne.Encoding.PAIRWISE && directionVars == null){
+            throw new IllegalStateException("makeDirectionVariables() must run before makeColorClauses()");
+        }
+        int bands = bandCount();
+        int[] bases = new int[bands];
+        for(int b = 0;b < bands;b++){
+            bases[b] = numberOfVariables + 1;
+            numberOfVariables = FlowGame.addVariables(numberOfVariables,
+                    auxiliaryCount(RowBands.firstRow(b, rows, bands), RowBands.firstRow(b + 1, rows, bands)));
+        }
+        int[][] counts = new int[bands][2];
+        grid();
+        workerAllocatedBytes += RowBands.encode(encodeThreads, rows, bands, sink,
+                (bandSink, band, fromRow, toRow) -> makeColorClauses(bandSink, fromRow, toRow, bases[band], counts[band]));
+        int endpointClauses = 0;
+        int neighborClauses = 0;
+        for(int[] count : counts){
+            endpointClauses += count[0];
+            neighborClauses += count[1];
+        }
 
-        for(int i = 0;i < puzzleSize;i++){
-            for(int j = 0;j < puzzleSize;j ++){
+        listener.variables("color", colorVariableCount());
+        listener.variables("at-most-one auxiliary", numberOfVariables - firstAuxiliary);
+        listener.clauses("endpoint color", endpointClauses);
+        listener.clauses("endpoint neighbor", neighborClauses);
+        listener.clauses("cell color", sink.clauseCount() - start - endpointClauses - neighborClauses);
+        listener.phase("color clauses", System.nanoTime() - startTime);
+    }
 
-                char currentChar = this.puzzles.get(i).get(j).toCharArray()[0];
-                if( (currentChar >= 'a' && currentChar <= 'z') ||(currentChar >= 'A' && currentChar <= 'Z')){
-                    int endPointColor = this.colors.get(Character.toString(currentChar));
-                    int[] colorClause = {FlowGame.colorVar(i,j,endPointColor,puzzleSize,numColors)};
+    // Auxiliary variables the at-most-one clauses of the free cells in rows
+    //  fromRow until toRow take.
+    private int auxiliaryCount(int fromRow,int toRow){
+        if(colorEncoding == AtMostOne.Encoding.PAIRWISE){
+            return 0;
+        }
+        int numColors = colors.keySet().size();
+        int cols = cols();
+        int count = 0;
+        for(int cell = fromRow * cols;cell < toRow * cols;cell++){
+            if(cells[cell] != FREE){
+                continue;
+            }
+            int possible = 0;
+            for(int n = 0;n < numColors;n++){
+                if(colorVars[cell * numColors + n] != SimplifyingSink.FALSE){
+                    possible++;
+                }
+            }
+            if(possible > 1){
+                count = Math.addExact(count, AtMostOne.auxiliaryCount(possible,colorEncoding));
+            }
+        }
+        return count;
+    }
+
+    // The color clauses of rows fromRow until toRow, auxiliary variables
+    //  numbered from nextVariable; counts gets the endpoint color and
+    //  endpoint neighbor clauses added.
+    private void makeColorClauses(ClauseSink sink,int fromRow,int toRow,int nextVariable,int[] counts){
+        if(propagation != null){
+            sink = new SimplifyingSink(sink);
+        }
+        int numColors = colors.keySet().size();
+        int cols = cols();
+        int[] possibleColorClause = new int[numColors];
+        int[] neighborColorClause = new int[FlowGame.DELTAS.length];
+        Graph grid = grid();
+        int endpointClauses = 0;
+        int neighborClauses = 0;
+
+        for(int i = fromRow;i < toRow;i++){
+            for(int j = 0;j < cols;j++){
+
+                if(this.cells[i * cols + j] != FREE){
+                    int endPointColor = this.cells[i * cols + j];
+                    int before = sink.clauseCount();
                     // color in this cell is this one
-                    colorClauses.add(colorClause);
+                    sink.add(this.colorVars[(i * cols + j) * numColors + endPointColor]);
 
                     // color in this cell is not the other ones
                     for(int n = 0;n < numColors;n++){
                         if(n != endPointColor){
-                            int[] otherColorClause = {-FlowGame.colorVar(i,j,n,puzzleSize,numColors)};
-                            colorClauses.add(otherColorClause);
+                            sink.add(-this.colorVars[(i * cols + j) * numColors + n]);
                         }
                     }
 
+                    endpointClauses += sink.clauseCount() - before;
+                    before = sink.clauseCount();
+
                     // gather neighbors' variables for this color
-                    int[][] neighbors = FlowGame.validNeighbors(puzzleSize,i,j);
-                    int[] neighborColorClause = new int[neighbors.length];
+                    int cell = i * cols + j;
+                    int first = grid.start(cell);
+                    int degree = grid.degree(cell);
                     //one neighbor has this color
-                    for(int n = 0;n < neighbors.length;n++){
-
-                        int currI = neighbors[n][1];
-                        int currJ = neighbors[n][2];
-                        neighborColorClause[n] = FlowGame.colorVar(currI,currJ,endPointColor,puzzleSize,numColors);
+                    for(int n = 0;n < degree;n++){
+                        neighborColorClause[n] = this.colorVars[grid.target(first + n) * numColors + endPointColor];
                     }
-                    colorClauses.add(neighborColorClause);
+                    sink.add(neighborColorClause,0,degree);
 
                     // no two neighbors have this color
-                    int[][] noTwoSameColorClauses = FlowGame.noTwoPairs(neighborColorClause);
-                    for(int k = 0;k < noTwoSameColorClauses.length;k++){
-                        if(!colorClauses.contains(noTwoSameColorClauses[k])){
-                            colorClauses.add(noTwoSameColorClauses[k]);
+                    for(int a = 0;a < degree;a++){
+                        for(int b = a + 1;b < degree;b++){
+                            // an endpoint of the same color diagonally across shares
+                            //  these two neighbors, and the earlier one already added the pair
+                            int across = grid.target(first + a) + grid.target(first + b) - cell;
+                            if(across < cell
+                                    && isEndpointOfColor(across / cols,across % cols,endPointColor)){
+                                continue;
+                            }
+                            sink.add(-neighborColorClause[a], -neighborColorClause[b]);
                         }
                     }
+                    neighborClauses += sink.clauseCount() - before;
 
                 }else{
 
-                    // color in this cell is not the other ones
-                    int[] possibleColorClause = new int[numColors];
+                    // this cell has one of the colors it can still take
+                    int possible = 0;
                     for(int n = 0;n < numColors;n++){
-                        int otherColorClause = FlowGame.colorVar(i,j,n,puzzleSize,numColors);
-                        //colorClauses.add(otherColorClause);
-                        possibleColorClause[n] = otherColorClause;
-                    }
-                    colorClauses.add(possibleColorClause);
-
-                    int[][] noTwoSameColorClauses = FlowGame.noTwoPairs(possibleColorClause);
-                    for(int k = 0;k < noTwoSameColorClauses.length;k++){
-                        if(!colorClauses.contains(noTwoSameColorClauses[k])){
-                            colorClauses.add(noTwoSameColorClauses[k]);
+                        int var = this.colorVars[(i * cols + j) * numColors + n];
+                        if(var != SimplifyingSink.FALSE){
+                            possibleColorClause[possible++] = var;
                         }
                     }
+                    if(possible == 1 && possibleColorClause[0] == SimplifyingSink.TRUE){
+                        // fixed by propagation; a lone ordinary variable still
+                        //  needs its unit clause
+                        continue;
+                    }
+                    sink.add(possibleColorClause,0,possible);
+
+                    // and no more than one
+                    nextVariable = AtMostOne.encode(possibleColorClause,0,possible,colorEncoding,sink,nextVariable);
                 }
             }
         }
+        counts[0] += endpointClauses;
+        counts[1] += neighborClauses;
+    }
+    // Check whether the cell at row i, column j is an endpoint of the given color.
+    public boolean isEndpointOfColor(int i,int j,int color){
+        if(i < 0 || i >= rows() || j < 0 || j >= cols()){
+            return false;
+        }
+        return this.cells[i * cols + j] == color;
+    }
 
-        for(int k = 0;k < colorClauses.size();k++){
-            for(int g = 0;g < colorClauses.get(k).length;g++){
-                System.out.printf("%5d",colorClauses.get(k)[g]);
-            }
-            System.out.print("\n");
+    // Color index of the endpoint in every cell, row by row, -1 for free cells.
+    public int[] endpointColors(){
+        int[] cellColors = new int[cells.length];
+        for(int cell = 0;cell < cells.length;cell++){
+            cellColors[cell] = cells[cell];
         }
-        System.out.println("Size: " + colorClauses.size());
+        return cellColors;
+    }
 
+    // Parse, encode, solve and decode one puzzle, timing every phase.
+    public SolveStats reduceToSAT(String filePosition){
+        SolveStats stats = new SolveStats();
+        stats.begin();
+        boolean parsed = parsePuzzle(filePosition);
+        stats.end(SolveStats.PARSE, 0, 0);
+        if(!parsed){
+            return stats;
+        }
+        return reduceToSAT(stats);
     }
-    public void reduceToSAT(){
 
-        int size = this.puzzles.size();
-        int colorsNum = this.colors.keySet().size();
-        int cellsNum = (int)Math.pow(size,2);
-        int cellsColorsNum = colorsNum * cellsNum;
+    public SolveStats reduceToSAT(Path path){
+        SolveStats stats = new SolveStats();
+        stats.begin();
+        boolean parsed = parsePuzzle(path);
+        stats.end(SolveStats.PARSE, 0, 0);
+        if(!parsed){
+            return stats;
+        }
+        return reduceToSAT(stats);
+    }
 
+    // Puzzle index of an opened pack.
+    public SolveStats reduceToSAT(PuzzlePack pack,int index){
+        SolveStats stats = new SolveStats();
+        stats.begin();
+        boolean parsed = pack.load(index, this);
+        stats.end(SolveStats.PARSE, 0, 0);
+        if(!parsed){
+            return stats;
+        }
+        return reduceToSAT(stats);
+    }
+
+    // Encode, solve and decode the puzzle already parsed.
+    public SolveStats reduceToSAT(){
+        return reduceToSAT(new SolveStats());
+    }
+
+    private SolveStats reduceToSAT(SolveStats stats){
 
         long startTime = System.nanoTime();
+        CanonicalForm form = null;
+        if(cache != null){
+            stats.begin();
+            form = CanonicalForm.of(this);
+            Solution cached = cache.get(form);
+            if(cached != null){
+                this.solution = form.fromCanonical(cached, colorLetters());
+            }
+            stats.end(SolveStats.CACHE, 0, 0);
+            if(cached != null){
+                stats.solved = true;
+                stats.cached = true;
+                listener.phase("total", System.nanoTime() - startTime);
+                return stats;
+            }
+        }
+
+        stats.begin();
+        stats.rejected = PreCheck.check(this);
+        stats.end(SolveStats.PRECHECK, 0, 0);
+        if(stats.rejected != PreCheck.Reason.OK){
+            listener.phase("total", System.nanoTime() - startTime);
+            return stats;
+        }
+
+        if(engine == Engine.BITBOARD){
+            stats.begin();
+            int status = solveBitboard(bitboardNodes);
+            stats.end(SolveStats.BITBOARD, 0, 0);
+            if(status != SATSolver.UNKNOWN || stopped){
+                stats.solveIterations = 1;
+                stats.solved = status == SATSolver.SATISFIABLE;
+                remember(form);
+                listener.phase("total", System.nanoTime() - startTime);
+                return stats;
+            }
+            // out of nodes: the SAT route below settles the puzzle
+        }
+
+        if(propagate){
+            stats.begin();
+            this.propagation = Propagation.run(this);
+            stats.end(SolveStats.PROPAGATE, 0, 0);
+            if(propagation.contradiction){
+                stats.rejected = PreCheck.Reason.PROPAGATION;
+                listener.phase("total", System.nanoTime() - startTime);
+                return stats;
+            }
+        }
+
+        stats.begin();
+        makeColorVariables();
+        stats.end(SolveStats.COLOR_VARIABLES, numberOfVariables, clauseCount());
+
+        stats.begin();
+        makeDirectionVariables(numberOfVariables);
+        stats.end(SolveStats.DIRECTION_VARIABLES, numberOfVariables, clauseCount());
+        int baseVariables = numberOfVariables;
+
+        stats.begin();
+        makeColorClauses();
+        chargeWorkers(stats);
+        stats.end(SolveStats.COLOR_CLAUSES, numberOfVariables, clauseCount());
+
+        stats.begin();
+        makeDirectionClauses();
+        chargeWorkers(stats);
+        stats.end(SolveStats.DIRECTION_CLAUSES, numberOfVariables, clauseCount());
+
+        stats.begin();
+        boolean solved = portfolio > 1 ? solvePortfolio(portfolio, baseVariables) : solveSAT();
+        chargeWorkers(stats);
+        stats.end(SolveStats.SOLVE, numberOfVariables, clauseCount());
+        if(winner != null){
+            stats.winner = winner.toString();
+            stats.winnerNanos = winnerNanos;
+        }
+        stats.solveIterations = solveIterations;
+        stats.blockedCycles = cycleClauses.size();
+
+        if(solved){
+            stats.begin();
+            decodeSolution();
+            stats.end(SolveStats.DECODE, numberOfVariables, clauseCount());
+        }
+        stats.solved = solved;
+        remember(form);
 
         long endTime = System.nanoTime();
         long duration = (endTime - startTime);
+        listener.phase("total", duration);
+        return stats;
     }
 
-
-    public void solveSAT(){
-
+    // Count what band and racer threads allocated for this game since the
+    //  last call in the phase stats is timing.
+    private void chargeWorkers(SolveStats stats){
+        stats.addAllocated(workerAllocatedBytes);
+        workerAllocatedBytes = 0;
     }
 
+    // Add the solution, if one was found, to the cache under form.
+    private void remember(CanonicalForm form){
+        if(form != null && solution != null){
+            cache.put(form, form.toCanonical(solution));
+        }
+    }
 
+    // Number the color variables from 1, cell by cell. Without propagation
+    //  every cell gets one per color, numbered as colorVar() does; with it,
+    //  colors a cell cannot take become FALSE and a fixed color TRUE.
+    public void makeColorVariables(){
+        int rows = rows();
+        int cols = cols();
+        int numColors = colors.keySet().size();
+        int cells = Math.multiplyExact(rows, cols);
+        this.colorVars = new int[Math.multiplyExact(cells, numColors)];
+        int numberOfVariable = 0;
+        for(int cell = 0;cell < cells;cell++){
+            for(int m = 0;m < numColors;m++){
+                int k = cell * numColors + m;
+                if(propagation == null){
+                    numberOfVariable = FlowGame.addVariables(numberOfVariable,1);
+                    colorVars[k] = numberOfVariable;
+                }else if(!propagation.hasColor(cell,m)){
+                    colorVars[k] = SimplifyingSink.FALSE;
+                }else if(propagation.isColorFixed(cell)){
+                    colorVars[k] = SimplifyingSink.TRUE;
+                }else{
+                    numberOfVariable = FlowGame.addVariables(numberOfVariable,1);
+                    colorVars[k] = numberOfVariable;
+                }
+            }
+        }
+        this.numberOfVariables = numberOfVariable;
+    }
 
-    // Return all combinations of two items from a collection, useful for
-    //  making a large number of SAT variables mutually exclusive.
-    static public int[][] allPairs(int[] collection){
-        int size = collection.length;
-        int pairsSize = size * (size - 1) / 2;
-        int[][] res = new int[pairsSize][2];
-        ArrayList<ArrayList<Integer>> val = FlowGame.combine(collection,2);
-        for(int i = 0;i < val.size();i++){
-            for(int j = 0;j < val.get(i).size();j++){
-                res[i][j] = val.get(i).get(j);
+    int colorVariableCount(){
+        int count = 0;
+        for(int var : colorVars){
+            if(var != SimplifyingSink.TRUE && var != SimplifyingSink.FALSE){
+                count++;
             }
         }
-        return res;
+        return count;
     }
 
-    static public ArrayList<ArrayList<Integer>> combine(int[] n, int k) {
-        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+    // Whether a literal of the colorVars / directionVars tables holds in the
+    //  model; the constants hold or fail regardless.
+    boolean holds(int literal){
+        if(literal == SimplifyingSink.TRUE){
+            return true;
+        }
+        if(literal == SimplifyingSink.FALSE){
+            return false;
+        }
+        return literal > 0 ? model[literal] : !model[-literal];
+    }
 
-        ArrayList<Integer> item = new ArrayList<Integer>();
-        dfs(n, k, 0, item, result); // because it need to begin from 1
+    public int clauseCount(){
+        return colorClauses.size() + directionClauses.size() + cycleClauses.size();
+    }
 
-        return result;
+    // Puzzles may be rectangular: rows lines of cols cells each.
+    public int rows(){
+        return rows;
     }
 
-    static private void dfs(int[] n, int k, int start, ArrayList<Integer> item,
-                     ArrayList<ArrayList<Integer>> res) {
-        if (item.size() == k) {
-            res.add(new ArrayList<Integer>(item));
-            return;
+    public int cols(){
+        return cols;
+    }
+
+    // The grid graph of the parsed puzzle, built on first use.
+    public Graph grid(){
+        if(grid == null){
+            grid = Graph.grid(rows(), cols());
         }
+        return grid;
+    }
 
-        for (int i = start; i < n.length; i++) {
-            item.add(n[i]);
-            dfs(n, k, i + 1, item, res);
-            item.remove(item.size() - 1);
+    // The letter of every color index.
+    char[] colorLetters(){
+        char[] colorLetters = new char[colors.keySet().size()];
+        for(Map.Entry<String, Integer> entry : colors.entrySet()){
+            colorLetters[entry.getValue()] = entry.getKey().charAt(0);
         }
+        return colorLetters;
     }
 
+    // Turn the model into a Solution: the color of each cell, and the
+    //  direction bits of its flow.
+    public Solution decodeSolution(){
+        int rows = rows();
+        int cols = cols();
+        int numColors = colors.keySet().size();
+        int numTypes = FlowGame.DIRECTION_TYPES.length;
+        Solution solution = new Solution(rows, cols, colorLetters());
+        Graph grid = grid();
+
+        for(int i = 0;i < rows;i++){
+            for(int j = 0;j < cols;j++){
+                int cell = i * cols + j;
+                for(int m = 0;m < numColors;m++){
+                    if(holds(colorVars[cell * numColors + m])){
+                        solution.colors[cell] = (byte)m;
+                        break;
+                    }
+                }
+                for(int m = 0;m < numTypes;m++){
+                    int var = directionVars[cell * numTypes + m];
+                    if(var != 0 && holds(var)){
+                        solution.flows[cell] = (byte)FlowGame.DIRECTION_TYPES[m];
+                    }
+                }
+            }
+        }
 
-    // Given a collection of SAT variables, generates clauses specifying
-    //  that no two of them can be true at the same time.
-    static public int[][] noTwoPairs(int[] collection){
-        int[][] pairs = FlowGame.allPairs(collection);
-        for(int i = 0;i < pairs.length;i++){
-            for(int j = 0;j < pairs[i].length;j++){
-                pairs[i][j] = -pairs[i][j];
+        // an endpoint flows towards its one neighbor of the same color
+        for(int i = 0;i < rows;i++){
+            for(int j = 0;j < cols;j++){
+                if(!isEndpointOfColor(i,j,solution.color(i,j))){
+                    continue;
+                }
+                int cell = i * cols + j;
+                for(int e = grid.start(cell);e < grid.end(cell);e++){
+                    if(solution.colors[grid.target(e)] == solution.colors[cell]){
+                        solution.flows[cell] = (byte)grid.label(e);
+                    }
+                }
             }
         }
-        return pairs;
+        this.solution = solution;
+        return solution;
     }
 
 
+    // Encode the puzzle and stream the clauses straight into a DIMACS CNF
+    //  file for an external solver; nothing is kept in memory beyond the
+    //  row bands of a parallel encoder.
+    public void exportDIMACS(Path path) throws IOException {
+        makeColorVariables();
+        makeDirectionVariables(this.numberOfVariables);
+        try(DimacsWriter writer = new DimacsWriter(path)){
+            makeColorClauses(writer);
+            makeDirectionClauses(writer);
+            writer.setVariableCount(this.numberOfVariables);
+        }
+    }
 
+    // Feed the color and direction clauses to the CDCL solver. On success the
+    //  satisfying assignment is kept in model, indexed by variable.
+    //
+    //  The clauses only constrain each cell locally, so a model may contain
+    //  closed loops of one color detached from its endpoints. Each such loop
+    //  is blocked by a clause forbidding its exact direction types, and the
+    //  same solver runs again, keeping what it learnt, until no loop is left.
+    public boolean solveSAT(){
+        return solveSAT(new SATSolver(this.numberOfVariables)) == SATSolver.SATISFIABLE;
+    }
 
-
-    // Check whether a position on a square grid is valid.
-    static public int[][]  validNeighbors(int puzzleSize,int i,int j){
-        int[][] allNeighbors = FlowGame.allNeighbors(puzzleSize,i,j);
-        ArrayList<int[]> res = new ArrayList<>();
-
-        for (int n = 0; n < allNeighbors.length;n++){
-            int[] currState = allNeighbors[n];
-            int currI = currState[1];
-            int currJ = currState[2];
-            if( FlowGame.validPosition(puzzleSize,currI,currJ)){
-                res.add(currState);
+    // The same with a given, possibly configured, solver. Returns its status:
+    //  UNKNOWN if it was stopped.
+    int solveSAT(SATSolver solver){
+        activeSolver = solver;
+        if(stopped){
+            solver.stop();
+        }
+        solver.addClauses(colorClauses);
+        solver.addClauses(directionClauses);
+        this.solveIterations = 0;
+        while(true){
+            this.solveIterations++;
+            int status = solver.solve();
+            if(status != SATSolver.SATISFIABLE){
+                this.model = null;
+                return status;
+            }
+            this.model = solver.getModel();
+            int start = cycleClauses.size();
+            if(blockCycles(cycleClauses) == 0){
+                return status;
+            }
+            for(int k = start;k < cycleClauses.size();k++){
+                solver.addClause(cycleClauses.literals(),cycleClauses.start(k),cycleClauses.length(k));
             }
         }
+    }
 
-        int size = res.size();
-        int[][] resArr = new int[size][3];
-        for(int n = 0;n < size;n++){
-            resArr[n] = res.get(n);
+    // Solve with a Portfolio of the given number of configurations; the
+    //  winner's model, numbering and loop clauses replace this game's.
+    boolean solvePortfolio(int size,int baseVariables){
+        Portfolio race = Portfolio.defaults(size);
+        activePortfolio = race;
+        if(stopped){
+            race.stop();
+        }
+        FlowGame won = race.race(this, baseVariables);
+        this.winner = race.winner;
+        this.winnerNanos = race.winnerNanos;
+        workerAllocatedBytes += race.allocatedBytes;
+        if(won == null){
+            this.model = null;
+            return false;
         }
-        return resArr;
+        this.model = won.model;
+        this.numberOfVariables = won.numberOfVariables;
+        this.colorClauses = won.colorClauses;
+        this.cycleClauses = won.cycleClauses;
+        this.solveIterations = won.solveIterations;
+        return model != null;
     }
 
+    // A game sharing this one's puzzle, variables and direction clauses, with
+    //  color clauses in the given encoding: this game's own when it matches,
+    //  else freshly encoded with auxiliary variables from baseVariables + 1.
+    FlowGame copyEncoding(AtMostOne.Encoding encoding,int baseVariables){
+        FlowGame copy = new FlowGame();
+        copy.cells = cells;
+        copy.rows = rows;
+        copy.cols = cols;
+        copy.colors = colors;
+        copy.grid = grid();
+        copy.propagation = propagation;
+        copy.colorVars = colorVars;
+        copy.directionVars = directionVars;
+        copy.directionClauses = directionClauses;
+        copy.colorEncoding = encoding;
+        copy.encodeThreads = 1;
+        if(encoding == colorEncoding){
+            copy.colorClauses = colorClauses;
+            copy.numberOfVariables = numberOfVariables;
+        }else{
+            copy.numberOfVariables = baseVariables;
+            copy.makeColorClauses();
+        }
+        return copy;
+    }
 
+    // Make the solve under way, or the next one, give up as unsolved; safe to
+    //  call from any thread. Parsing and encoding run to completion.
+    public void stop(){
+        stopped = true;
+        SATSolver solver = activeSolver;
+        if(solver != null){
+            solver.stop();
+        }
+        BitboardSolver bitboard = activeBitboard;
+        if(bitboard != null){
+            bitboard.stop();
+        }
+        Portfolio race = activePortfolio;
+        if(race != null){
+            race.stop();
+        }
+    }
 
-    // Check Whether a Position on a Square Grid is Valid.
-    static public boolean validPosition(int puzzleSize,int i,int j){
-        return i >= 0 && i < puzzleSize && j >= 0 && j < puzzleSize;
+    // Search for the flows directly on bitboards instead of through SAT,
+    //  for at most nodeLimit nodes. Fills in solution; model stays empty since
+    //  there are no variables. Returns the BitboardSolver status, UNKNOWN
+    //  when stopped or out of nodes.
+    public int solveBitboard(long nodeLimit){
+        BitboardSolver solver = BitboardSolver.of(this);
+        solver.nodeLimit = nodeLimit;
+        activeBitboard = solver;
+        if(stopped){
+            solver.stop();
+        }
+        this.model = null;
+        int status = solver.solve();
+        if(status == SATSolver.SATISFIABLE){
+            this.solution = solver.toSolution(colorLetters());
+        }
+        return status;
     }
 
-    // Return All Neighbors of a Grid Square at Row i, Column j
-    static public int[][] allNeighbors(int puzzleSize,int i,int j){
-        int[][] res = new int[4][3];
-        for(int n = 0;n < FlowGame.DELTAS.length;n++){
-            int deltaX = FlowGame.DELTAS[n][1];
-            int deltaY = FlowGame.DELTAS[n][2];
-            int direction = FlowGame.DELTAS[n][0];
+    // Find every closed loop in the model and add one blocking clause per
+    //  loop to the sink. Returns the number of loops found.
+    public int blockCycles(ClauseSink sink){
+        if(propagation != null){
+            sink = new SimplifyingSink(sink);
+        }
+        int rows = rows();
+        int cols = cols();
+        int numTypes = FlowGame.DIRECTION_TYPES.length;
+        int cells = rows * cols;
+
+        // direction type index of every path cell, -1 for endpoints
+        int[] cellType = new int[cells];
+        for(int cell = 0;cell < cells;cell++){
+            cellType[cell] = -1;
+            for(int m = 0;m < numTypes;m++){
+                int var = directionVars[cell * numTypes + m];
+                if(var != 0 && holds(var)){
+                    cellType[cell] = m;
+                }
+            }
+        }
 
-            res[n][0] = direction;
-            res[n][1] = i + deltaX;
-            res[n][2] = j + deltaY;
+        // walk the flow from each unvisited path cell: reaching an endpoint
+        //  means it lies on a real flow, coming back to the start means a loop
+        boolean[] visited = new boolean[cells];
+        int[] loop = new int[cells];
+        int loops = 0;
+        for(int startCell = 0;startCell < cells;startCell++){
+            if(visited[startCell] || cellType[startCell] < 0){
+                continue;
+            }
+            int length = 0;
+            int previous = -1;
+            int current = startCell;
+            boolean closed = false;
+            while(current >= 0 && cellType[current] >= 0 && !visited[current]){
+                visited[current] = true;
+                loop[length++] = current;
+                int next = -1;
+                int type = FlowGame.DIRECTION_TYPES[cellType[current]];
+                for(int[] delta : FlowGame.DELTAS){
+                    if((type & delta[0]) == 0){
+                        continue;
+                    }
+                    int neighbor = (current / cols + delta[1]) * cols + current % cols + delta[2];
+                    if(neighbor != previous){
+                        next = neighbor;
+                        break;
+                    }
+                }
+                previous = current;
+                current = next;
+                closed = current == startCell;
+            }
+            if(closed){
+                for(int k = 0;k < length;k++){
+                    int cell = loop[k];
+                    sink.addLiteral(-directionVars[cell * numTypes + cellType[cell]]);
+                }
+                sink.endClause();
+                loops++;
+            }
         }
-        return res;
+        return loops;
     }
 
+    // The cache named by a --cache or --cache=file argument: in memory only,
+    //  or kept in file.
+    static SolutionCache openCache(String arg) throws IOException {
+        if(arg.startsWith("--cache=")){
+            return SolutionCache.open(Paths.get(arg.substring("--cache=".length())), SolutionCache.DEFAULT_MAX_BYTES);
+        }
+        return new SolutionCache(SolutionCache.DEFAULT_MAX_BYTES);
+    }
 
+    // The racers of a --portfolio or --portfolio=n argument, one per core by
+    //  default.
+    static int portfolioSize(String arg){
+        if(arg.startsWith("--portfolio=")){
+            return Integer.parseInt(arg.substring("--portfolio=".length()));
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
 
+    // The renderer of a --render or --render=ansi argument, drawing to out.
+    static SolutionRenderer renderer(String arg, OutputStream out){
+        return new SolutionRenderer(out, arg.equals("--render=ansi"));
+    }
+
+    // Usage: FlowGame [--trace | --json] [--bitboard[=nodes]] [--cache[=file]] [--portfolio[=n]]
+    //                 [--render[=ansi]] [puzzle file]
+    //        FlowGame --batch [--cache[=file]] [--portfolio[=n]] [--render[=ansi]] <directory | glob> [threads]
+    //                 [sat | bitboard]
+    //        FlowGame --shrink <directory | glob>
+    //        FlowGame --pack <directory | glob> <pack file>
+    //        FlowGame --serve [--port=n] [--threads=n] [--queue=n] [--timeout=ms] [--bitboard] [--cache[=file]]
     static public void main(String[] args) {
         FlowGame game = new FlowGame();
-        game.parsePuzzle("extreme_8x8_01.txt");
-        game.printPuzzle();
-        //game.makeColorClauses();
-        game.makeDirectionVariables(320);
-
-        for(ArrayList<Integer> key: game.directionDict.keySet()){
-            System.out.println(key + "  :  " +game.directionDict.get(key));
+        String puzzle = "extreme_8x8_01.txt";
+        JsonEncodingListener json = null;
+        SolutionRenderer renderer = null;
+        if(args.length > 0 && args[0].equals("--batch")){
+            BatchSolver.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if(args.length > 0 && args[0].equals("--serve")){
+            SolverServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if(args.length > 1 && args[0].equals("--shrink")){
+            try{
+                Propagation.report(BatchSolver.resolve(args[1]), System.out);
+            }catch(IOException e){
+                System.out.println("Cannot read " + args[1] + ": " + e.getMessage());
+            }
+            return;
+        }
+        if(args.length > 2 && args[0].equals("--pack")){
+            try{
+                int count = PuzzlePack.write(BatchSolver.resolve(args[1]), Paths.get(args[2]));
+                System.out.println(count + " puzzles written to " + args[2]);
+            }catch(IOException e){
+                System.out.println("Cannot write " + args[2] + ": " + e.getMessage());
+            }
+            return;
+        }
+        for(String arg : args){
+            if(arg.equals("--trace")){
+                game.listener = new TextEncodingListener(System.out, true);
+            }else if(arg.equals("--json")){
+                json = new JsonEncodingListener();
+                game.listener = json;
+            }else if(arg.startsWith("--bitboard")){
+                game.engine = Engine.BITBOARD;
+                if(arg.startsWith("--bitboard=")){
+                    game.bitboardNodes = Long.parseLong(arg.substring("--bitboard=".length()));
+                }
+            }else if(arg.startsWith("--portfolio")){
+                game.portfolio = portfolioSize(arg);
+            }else if(arg.startsWith("--render")){
+                renderer = renderer(arg, System.out);
+            }else if(arg.startsWith("--cache")){
+                try{
+                    game.cache = openCache(arg);
+                }catch(IOException e){
+                    System.out.println("Cannot open " + arg + ": " + e.getMessage());
+                    return;
+                }
+            }else{
+                puzzle = arg;
+            }
         }
-        System.out.println("Size: " + game.directionDict.keySet().size());
 
-        game.makeDirectionClauses();
-        for(int i = 0;i < game.directionClauses.size();i++){
-            for(int j = 0;j < game.directionClauses.get(i).length;j ++){
-                System.out.printf("%4d",game.directionClauses.get(i)[j]);
+        SolveStats stats = game.reduceToSAT(puzzle);
+        if(game.cache != null){
+            try{
+                game.cache.close();
+            }catch(IOException e){
+                System.out.println("Cannot write the cache: " + e.getMessage());
             }
-            System.out.print("\n");
+        }
+        if(game.cells == null){
+            return;
+        }
+        game.printPuzzle();
+        System.out.println(stats.isSolved() ? "Solved" : "No solution");
+        if(game.solution != null && renderer != null){
+            try{
+                renderer.render(game.solution);
+                renderer.flush();
+            }catch(IOException e){
+                System.out.println("Cannot render the solution: " + e.getMessage());
+            }
+        }else if(game.solution != null){
+            System.out.print(game.solution);
+        }
+        System.out.print(stats);
+        if(json != null){
+            System.out.println(json.toJson());
         }
     }
 
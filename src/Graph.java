@@ -1,22 +1,175 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A directed graph in compressed sparse row form.
+//
+//  Edges are collected by addEdge() and packed on first use into one flat
+//  array of (label, target) pairs: the edges leaving vertex v are pairs
+//  offsets[v] .. offsets[v + 1] - 1, the label being e.g. the direction bit
+//  of a grid edge. Walking a vertex's edges with start()/end()/target()/
+//  label() allocates nothing. Adding an edge after packing repacks on the
+//  next query.
+//
+//  Grid graphs are immutable and cached per size, so every puzzle of one
+//  size shares a single neighbor table. The cache is bounded for long runs
+//  over arbitrary sizes: grids above MAX_SHARED_CELLS cells, and any size
+//  arriving after MAX_SHARED_GRIDS are cached, are built per puzzle instead.
 public class Graph {
+    static final int MAX_SHARED_CELLS = 64 * 64;
+    static final int MAX_SHARED_GRIDS = 256;
+    static final ConcurrentHashMap<Long, Graph> GRIDS = new ConcurrentHashMap<>();
+
     int vertices; // number of vertices
-    int[][] adjacencyMatrix; // adjacenecy matrix adjacencyMatrix[i][j] means vertex i connect to vertex j
-    //ArrayList<Integer> edgeList;
+    int edges = 0;
+    // edges as added, in order
+    int[] edgeSources;
+    int[] edgeTargets;
+    int[] edgeLabels;
+    // packed rows, null until the first query after an addEdge()
+    int[] offsets;
+    // edge e is adjacency[2 * e] = label, adjacency[2 * e + 1] = target
+    int[] adjacency;
+    boolean shared = false;
 
     public Graph(int vertices){
         this.vertices = vertices;
-        this.adjacencyMatrix = new int[vertices][vertices];
-        //this.edgeList = new ArrayList<>();
+        this.edgeSources = new int[16];
+        this.edgeTargets = new int[16];
+        this.edgeLabels = new int[16];
+    }
+
+    // The grid graph of a rows x cols puzzle, vertex i * cols + j per cell,
+    //  with an edge to every neighbor labelled with its direction bit, in
+    //  the order of FlowGame.DELTAS. Built once per size and shared while the
+    //  cache has room.
+    public static Graph grid(int rows, int cols){
+        long key = ((long)rows << 32) | cols;
+        Graph graph = GRIDS.get(key);
+        if(graph != null){
+            return graph;
+        }
+        if((long)rows * cols > MAX_SHARED_CELLS || GRIDS.size() >= MAX_SHARED_GRIDS){
+            return buildGrid(rows, cols);
+        }
+        return GRIDS.computeIfAbsent(key, k -> buildGrid(rows, cols));
+    }
+
+    private static Graph buildGrid(int rows, int cols){
+        Graph graph = new Graph(rows * cols);
+        for(int i = 0;i < rows;i++){
+            for(int j = 0;j < cols;j++){
+                for(int[] delta : FlowGame.DELTAS){
+                    int neighborI = i + delta[1];
+                    int neighborJ = j + delta[2];
+                    if(neighborI >= 0 && neighborI < rows && neighborJ >= 0 && neighborJ < cols){
+                        graph.addEdge(i * cols + j, neighborI * cols + neighborJ, delta[0]);
+                    }
+                }
+            }
+        }
+        graph.pack();
+        graph.shared = true;
+        graph.edgeSources = null;
+        graph.edgeTargets = null;
+        graph.edgeLabels = null;
+        return graph;
     }
 
     public void addEdge(int startPoint,int endPoint){
-        this.adjacencyMatrix[startPoint][endPoint] = 1;
+        addEdge(startPoint, endPoint, 0);
+    }
+
+    public void addEdge(int startPoint,int endPoint,int label){
+        if(shared){
+            throw new IllegalStateException("grid graphs are shared and cannot change");
+        }
+        if(edges == edgeSources.length){
+            edgeSources = Arrays.copyOf(edgeSources, edges * 2);
+            edgeTargets = Arrays.copyOf(edgeTargets, edges * 2);
+            edgeLabels = Arrays.copyOf(edgeLabels, edges * 2);
+        }
+        edgeSources[edges] = startPoint;
+        edgeTargets[edges] = endPoint;
+        edgeLabels[edges] = label;
+        edges++;
+        offsets = null;
+    }
+
+    // Counting sort of the edges by source; edges of one vertex keep the
+    //  order they were added in.
+    private void pack(){
+        int[] rowStart = new int[vertices + 1];
+        for(int e = 0;e < edges;e++){
+            rowStart[edgeSources[e] + 1]++;
+        }
+        for(int v = 0;v < vertices;v++){
+            rowStart[v + 1] += rowStart[v];
+        }
+        int[] packed = new int[2 * edges];
+        int[] next = Arrays.copyOf(rowStart, vertices);
+        for(int e = 0;e < edges;e++){
+            int k = next[edgeSources[e]]++;
+            packed[2 * k] = edgeLabels[e];
+            packed[2 * k + 1] = edgeTargets[e];
+        }
+        this.adjacency = packed;
+        this.offsets = rowStart;
+    }
+
+    private void ensurePacked(){
+        if(offsets == null){
+            pack();
+        }
+    }
+
+    public int vertexCount(){
+        return vertices;
+    }
+
+    public int edgeCount(){
+        return edges;
+    }
+
+    // Index of the first edge leaving vertex.
+    public int start(int vertex){
+        ensurePacked();
+        return offsets[vertex];
+    }
+
+    // One past the index of the last edge leaving vertex.
+    public int end(int vertex){
+        ensurePacked();
+        return offsets[vertex + 1];
+    }
+
+    public int degree(int vertex){
+        ensurePacked();
+        return offsets[vertex + 1] - offsets[vertex];
+    }
+
+    public int target(int edge){
+        ensurePacked();
+        return adjacency[2 * edge + 1];
+    }
+
+    public int label(int edge){
+        ensurePacked();
+        return adjacency[2 * edge];
+    }
+
+    public boolean hasEdge(int startPoint,int endPoint){
+        for(int e = start(startPoint);e < end(startPoint);e++){
+            if(adjacency[2 * e + 1] == endPoint){
+                return true;
+            }
+        }
+        return false;
     }
 
     public void printGraph(){
-        for(int i = 0;i < this.adjacencyMatrix.length;i++){
-            for(int j = 0;j < this.adjacencyMatrix[0].length;j++){
-                System.out.printf("%3d",this.adjacencyMatrix[i][j]);
+        for(int i = 0;i < this.vertices;i++){
+            for(int j = 0;j < this.vertices;j++){
+                System.out.printf("%3d",hasEdge(i,j) ? 1 : 0);
             }
             System.out.print("\n");
         }
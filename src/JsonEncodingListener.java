@@ -0,0 +1,74 @@
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Collects encoder diagnostics and renders them as one JSON object:
+//  {"variables":{...},"clauses":{...},"phasesMs":{...}}
+//  Repeated categories are summed. Per-cell tracing is not collected.
+public class JsonEncodingListener implements EncodingListener {
+    LinkedHashMap<String, Long> variables = new LinkedHashMap<>();
+    LinkedHashMap<String, Long> clauses = new LinkedHashMap<>();
+    LinkedHashMap<String, Long> phases = new LinkedHashMap<>();
+
+    @Override
+    public void variables(String category, int count){
+        variables.merge(category, (long)count, Long::sum);
+    }
+
+    @Override
+    public void clauses(String category, int count){
+        clauses.merge(category, (long)count, Long::sum);
+    }
+
+    @Override
+    public void phase(String phase, long nanos){
+        phases.merge(phase, nanos, Long::sum);
+    }
+
+    public String toJson(){
+        StringBuilder json = new StringBuilder();
+        json.append('{');
+        appendCounts(json, "variables", variables);
+        json.append(',');
+        appendCounts(json, "clauses", clauses);
+        json.append(",\"phasesMs\":{");
+        boolean first = true;
+        for(Map.Entry<String, Long> entry : phases.entrySet()){
+            if(!first){
+                json.append(',');
+            }
+            first = false;
+            appendString(json, entry.getKey());
+            json.append(':').append(String.format(Locale.ROOT, "%.3f", entry.getValue() / 1e6));
+        }
+        json.append("}}");
+        return json.toString();
+    }
+
+    private static void appendCounts(StringBuilder json, String name, Map<String, Long> counts){
+        appendString(json, name);
+        json.append(":{");
+        boolean first = true;
+        for(Map.Entry<String, Long> entry : counts.entrySet()){
+            if(!first){
+                json.append(',');
+            }
+            first = false;
+            appendString(json, entry.getKey());
+            json.append(':').append(entry.getValue());
+        }
+        json.append('}');
+    }
+
+    private static void appendString(StringBuilder json, String value){
+        json.append('"');
+        for(int k = 0;k < value.length();k++){
+            char c = value.charAt(k);
+            if(c == '"' || c == '\\'){
+                json.append('\\');
+            }
+            json.append(c);
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Races several solver configurations on one puzzle, one thread each. The
+//  first racer to finish wins and the others are stopped.
+//
+//  A configuration picks the at-most-one encoding of the color clauses, and
+//  the seed, random decision rate, initial phase and restart unit of the SAT
+//  solver. Every racer works on its own copy of the game, which shares the
+//  parsed puzzle, the variables and the direction clauses and re-encodes the
+//  color clauses when its encoding differs. Any racer's answer, satisfiable
+//  or not, settles the puzzle since all of them encode the same one.
+//  Stopping is cooperative through SATSolver.stop(); a racer still encoding
+//  finishes that first. A racer that throws has lost; the race only fails
+//  when every racer does.
+public class Portfolio {
+    static final int[] RESTART_BASES = {100, 50, 512};
+
+    public static class Config {
+        final AtMostOne.Encoding encoding;
+        // seed 0 leaves the solver exactly as a sequential solveSAT() runs it
+        final long seed;
+        final double randomFrequency;
+        final boolean positivePhase;
+        final int restartBase;
+
+        public Config(AtMostOne.Encoding encoding, long seed, double randomFrequency, boolean positivePhase,
+                      int restartBase){
+            this.encoding = encoding;
+            this.seed = seed;
+            this.randomFrequency = randomFrequency;
+            this.positivePhase = positivePhase;
+            this.restartBase = restartBase;
+        }
+
+        void apply(SATSolver solver){
+            solver.restartBase = restartBase;
+            if(seed != 0){
+                solver.diversify(seed, randomFrequency, positivePhase);
+            }
+        }
+
+        @Override
+        public String toString(){
+            return String.format("%s seed=%d random=%.2f phase=%s restarts=%d", encoding.name().toLowerCase(),
+                    seed, randomFrequency, positivePhase ? "+" : "-", restartBase);
+        }
+    }
+
+    final List<Config> configs;
+    // set by race()
+    Config winner;
+    long winnerNanos;
+    // bytes all racers allocated, once race() returns
+    long allocatedBytes;
+    volatile boolean stopped = false;
+    // the racers under way, for stop()
+    final List<Racer> racers = new CopyOnWriteArrayList<>();
+
+    public Portfolio(List<Config> configs){
+        this.configs = configs;
+    }
+
+    // The first size configurations of a fixed sequence: the sequential
+    //  default, then every encoding in turn with varying phase, restart unit
+    //  and seed.
+    public static Portfolio defaults(int size){
+        AtMostOne.Encoding[] encodings = AtMostOne.Encoding.values();
+        List<Config> configs = new ArrayList<>();
+        configs.add(new Config(AtMostOne.Encoding.PAIRWISE, 0, 0, false, RESTART_BASES[0]));
+        for(int k = 1;k < size;k++){
+            configs.add(new Config(encodings[k % encodings.length], k, 0.02, (k / encodings.length) % 2 == 1,
+                    RESTART_BASES[(k / 2) % RESTART_BASES.length]));
+        }
+        return new Portfolio(configs);
+    }
+
+    // One configuration's attempt; cancel() may come before its solver exists.
+    private static class Racer {
+        final Config config;
+        volatile SATSolver solver;
+        volatile boolean cancelled;
+        FlowGame game;
+        int status = SATSolver.UNKNOWN;
+        long allocatedBytes;
+
+        Racer(Config config){
+            this.config = config;
+        }
+
+        void cancel(){
+            cancelled = true;
+            SATSolver current = solver;
+            if(current != null){
+                current.stop();
+            }
+        }
+    }
+
+    // Solve game, already encoded with its own colorEncoding on top of the
+    //  first baseVariables variables, with every configuration at once.
+    //  Returns the winning racer's game, whose model is null if the puzzle has
+    //  no solution, or null if no racer finished.
+    FlowGame race(FlowGame game, int baseVariables){
+        ExecutorService pool = Executors.newFixedThreadPool(configs.size());
+        CompletionService<Racer> done = new ExecutorCompletionService<>(pool);
+        long startTime = System.nanoTime();
+        try{
+            for(Config config : configs){
+                Racer racer = new Racer(config);
+                racers.add(racer);
+                if(stopped){
+                    racer.cancel();
+                }
+                done.submit(() -> run(racer, game, baseVariables));
+            }
+            Throwable failure = null;
+            int failed = 0;
+            for(int k = 0;k < racers.size();k++){
+                Racer racer;
+                try{
+                    racer = done.take().get();
+                }catch(ExecutionException e){
+                    failure = e.getCause();
+                    failed++;
+                    continue;
+                }
+                if(racer.status != SATSolver.UNKNOWN){
+                    this.winner = racer.config;
+                    this.winnerNanos = System.nanoTime() - startTime;
+                    return racer.game;
+                }
+            }
+            if(failed == racers.size()){
+                throw new IllegalStateException("every portfolio racer failed", failure);
+            }
+            return null;
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            return null;
+        }finally{
+            for(Racer racer : racers){
+                racer.cancel();
+            }
+            pool.shutdown();
+            try{
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            for(Racer racer : racers){
+                allocatedBytes += racer.allocatedBytes;
+            }
+        }
+    }
+
+    // Stop every racer; race() then returns null unless one already won.
+    public void stop(){
+        stopped = true;
+        for(Racer racer : racers){
+            racer.cancel();
+        }
+    }
+
+    private static Racer run(Racer racer, FlowGame game, int baseVariables){
+        if(racer.cancelled){
+            return racer;
+        }
+        long before = SolveStats.allocatedBytes();
+        try{
+            FlowGame copy = game.copyEncoding(racer.config.encoding, baseVariables);
+            SATSolver solver = new SATSolver(copy.numberOfVariables);
+            racer.config.apply(solver);
+            racer.solver = solver;
+            if(racer.cancelled){
+                return racer;
+            }
+            racer.status = copy.solveSAT(solver);
+            racer.game = copy;
+            return racer;
+        }finally{
+            if(before >= 0){
+                racer.allocatedBytes = SolveStats.allocatedBytes() - before;
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+// Cheap tests that prove a puzzle unsolvable before any clause is built.
+//  Each test is a necessary condition of every solution, so a puzzle that
+//  fails one can be rejected without encoding or solving it:
+//
+//  WALLED_IN     an endpoint whose neighbors are all endpoints of other colors
+//  DISCONNECTED  the two endpoints of a color cannot reach each other
+//                through free cells (union-find over the free cells)
+//  PARITY        on a checkerboard a flow between two black endpoints covers
+//                one black cell more than white, between a black and a white
+//                endpoint the same number; since the flows cover the whole
+//                grid, black minus white cells must equal black pairs minus
+//                white pairs
+//  BOTTLENECK    one free cell whose removal disconnects two colors, which
+//                would both have to pass through it
+//
+//  PROPAGATION is not tested here; FlowGame reports it when Propagation
+//  empties a domain.
+public class PreCheck {
+    public enum Reason { OK, WALLED_IN, DISCONNECTED, PARITY, BOTTLENECK, PROPAGATION }
+
+    int rows;
+    int cols;
+    int numColors;
+    // color index of every endpoint cell, -1 for free cells
+    int[] cellColor;
+    // the two endpoint cells of every color
+    int[] first;
+    int[] second;
+
+    int[] parent;
+    // free cell left out of the union-find, -1 for none
+    int blocked = -1;
+    int[] neighbors = new int[4];
+    int[] roots = new int[4];
+
+    // Color and cell that caused the rejection, -1 when not applicable.
+    int failedColor = -1;
+    int failedCell = -1;
+
+    public PreCheck(int rows, int cols, int numColors, int[] cellColor){
+        this.rows = rows;
+        this.cols = cols;
+        this.numColors = numColors;
+        this.cellColor = cellColor;
+        this.first = new int[numColors];
+        this.second = new int[numColors];
+        this.parent = new int[rows * cols];
+        java.util.Arrays.fill(first, -1);
+        for(int cell = 0;cell < cellColor.length;cell++){
+            int color = cellColor[cell];
+            if(color < 0){
+                continue;
+            }
+            if(first[color] < 0){
+                first[color] = cell;
+            }else{
+                second[color] = cell;
+            }
+        }
+    }
+
+    public static Reason check(FlowGame game){
+        return new PreCheck(game.rows(), game.cols(), game.colors.keySet().size(), game.endpointColors()).check();
+    }
+
+    public Reason check(){
+        if(walledIn()){
+            return Reason.WALLED_IN;
+        }
+        if(!parity()){
+            return Reason.PARITY;
+        }
+        connectFreeCells(-1);
+        for(int color = 0;color < numColors;color++){
+            if(!connected(color)){
+                failedColor = color;
+                return Reason.DISCONNECTED;
+            }
+        }
+        if(bottleneck()){
+            return Reason.BOTTLENECK;
+        }
+        return Reason.OK;
+    }
+
+    private boolean walledIn(){
+        for(int cell = 0;cell < cellColor.length;cell++){
+            int color = cellColor[cell];
+            if(color < 0){
+                continue;
+            }
+            boolean open = false;
+            int count = neighbors(cell);
+            for(int n = 0;n < count;n++){
+                int other = cellColor[neighbors[n]];
+                if(other < 0 || other == color){
+                    open = true;
+                }
+            }
+            if(!open){
+                failedColor = color;
+                failedCell = cell;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean parity(){
+        int difference = 0;
+        for(int cell = 0;cell < cellColor.length;cell++){
+            difference += isBlack(cell) ? 1 : -1;
+        }
+        int pairs = 0;
+        for(int color = 0;color < numColors;color++){
+            boolean a = isBlack(first[color]);
+            boolean b = isBlack(second[color]);
+            if(a && b){
+                pairs++;
+            }else if(!a && !b){
+                pairs--;
+            }
+        }
+        return difference == pairs;
+    }
+
+    private boolean isBlack(int cell){
+        return (cell / cols + cell % cols) % 2 == 0;
+    }
+
+    // Try every free cell as the single cell every route of two colors
+    //  shares. O(free cells * cells), with the union-find arrays reused.
+    private boolean bottleneck(){
+        for(int blocked = 0;blocked < cellColor.length;blocked++){
+            if(cellColor[blocked] >= 0){
+                continue;
+            }
+            connectFreeCells(blocked);
+            int broken = 0;
+            for(int color = 0;color < numColors;color++){
+                if(!connected(color)){
+                    broken++;
+                }
+            }
+            if(broken >= 2){
+                failedCell = blocked;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Union every pair of adjacent free cells, skipping the blocked one.
+    private void connectFreeCells(int blocked){
+        for(int cell = 0;cell < parent.length;cell++){
+            parent[cell] = cell;
+        }
+        for(int cell = 0;cell < parent.length;cell++){
+            if(cellColor[cell] >= 0 || cell == blocked){
+                continue;
+            }
+            int j = cell % cols;
+            if(j + 1 < cols && cellColor[cell + 1] < 0 && cell + 1 != blocked){
+                union(cell, cell + 1);
+            }
+            if(cell + cols < parent.length && cellColor[cell + cols] < 0 && cell + cols != blocked){
+                union(cell, cell + cols);
+            }
+        }
+        this.blocked = blocked;
+    }
+
+    // The endpoints of a color are connected when they touch, or when a free
+    //  neighbor of one shares a component with a free neighbor of the other.
+    private boolean connected(int color){
+        int a = first[color];
+        int b = second[color];
+        int countA = neighbors(a);
+        for(int n = 0;n < countA;n++){
+            if(neighbors[n] == b){
+                return true;
+            }
+        }
+        int rootCount = 0;
+        for(int n = 0;n < countA;n++){
+            int cell = neighbors[n];
+            if(cellColor[cell] < 0 && cell != blocked){
+                roots[rootCount++] = find(cell);
+            }
+        }
+        int countB = neighbors(b);
+        for(int n = 0;n < countB;n++){
+            int cell = neighbors[n];
+            if(cellColor[cell] < 0 && cell != blocked){
+                int root = find(cell);
+                for(int k = 0;k < rootCount;k++){
+                    if(roots[k] == root){
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private int neighbors(int cell){
+        int i = cell / cols;
+        int j = cell % cols;
+        int count = 0;
+        if(j > 0){
+            neighbors[count++] = cell - 1;
+        }
+        if(j + 1 < cols){
+            neighbors[count++] = cell + 1;
+        }
+        if(i > 0){
+            neighbors[count++] = cell - cols;
+        }
+        if(i + 1 < rows){
+            neighbors[count++] = cell + cols;
+        }
+        return count;
+    }
+
+    private int find(int cell){
+        while(parent[cell] != cell){
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    private void union(int a, int b){
+        int rootA = find(a);
+        int rootB = find(b);
+        if(rootA != rootB){
+            parent[rootA] = rootB;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.List;
+
+// Fixes forced colors and direction types before anything is encoded.
+//
+//  Every cell keeps a domain of colors it may still take (a bit mask, so at
+//  most 64 colors) and every free cell the direction types it may still take
+//  (bit m stands for FlowGame.DIRECTION_TYPES[m]). Two rules run to a fixpoint:
+//
+//  - a direction type stays only if some color of the cell is possible in
+//    both neighbors it points to and fixed in none of the others, and a free
+//    cell keeps only the colors supported by one of its direction types;
+//  - an endpoint needs exactly one neighbor of its color: when only one
+//    neighbor may take it that neighbor is fixed, and once one neighbor is
+//    fixed to it the others lose it.
+//
+//  Each rule only removes values that no solution can use, so encoding the
+//  remaining ones keeps every solution. An emptied domain proves the puzzle
+//  unsolvable.
+public class Propagation {
+    int rows;
+    int cols;
+    int numColors;
+    int[] cellColor;
+    long[] colors;
+    int[] types;
+    boolean contradiction = false;
+
+    public Propagation(int rows, int cols, int numColors, int[] cellColor){
+        if(numColors > Long.SIZE){
+            throw new IllegalArgumentException("at most " + Long.SIZE + " colors, got " + numColors);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.numColors = numColors;
+        this.cellColor = cellColor;
+        this.colors = new long[rows * cols];
+        this.types = new int[rows * cols];
+        long allColors = numColors == Long.SIZE ? -1L : (1L << numColors) - 1;
+        for(int cell = 0;cell < colors.length;cell++){
+            if(cellColor[cell] >= 0){
+                colors[cell] = 1L << cellColor[cell];
+                continue;
+            }
+            colors[cell] = allColors;
+            int sides = 0;
+            for(int[] delta : FlowGame.DELTAS){
+                if(neighbor(cell, delta) >= 0){
+                    sides |= delta[0];
+                }
+            }
+            for(int m = 0;m < FlowGame.DIRECTION_TYPES.length;m++){
+                int type = FlowGame.DIRECTION_TYPES[m];
+                if((sides & type) == type){
+                    types[cell] |= 1 << m;
+                }
+            }
+        }
+    }
+
+    public static Propagation run(FlowGame game){
+        Propagation propagation = new Propagation(game.rows(), game.cols(), game.colors.keySet().size(), game.endpointColors());
+        propagation.propagate();
+        return propagation;
+    }
+
+    // Apply both rules until nothing changes. Returns false on a contradiction.
+    public boolean propagate(){
+        boolean changed = true;
+        while(changed && !contradiction){
+            changed = false;
+            for(int cell = 0;cell < colors.length && !contradiction;cell++){
+                if(cellColor[cell] < 0){
+                    changed |= reviseFreeCell(cell);
+                }else{
+                    changed |= reviseEndpoint(cell);
+                }
+            }
+        }
+        return !contradiction;
+    }
+
+    private boolean reviseFreeCell(int cell){
+        int keptTypes = 0;
+        long support = 0;
+        for(int m = 0;m < FlowGame.DIRECTION_TYPES.length;m++){
+            if((types[cell] & (1 << m)) == 0){
+                continue;
+            }
+            int type = FlowGame.DIRECTION_TYPES[m];
+            long along = colors[cell];
+            for(int[] delta : FlowGame.DELTAS){
+                int neighbor = neighbor(cell, delta);
+                if(neighbor < 0){
+                    continue;
+                }
+                if((type & delta[0]) != 0){
+                    along &= colors[neighbor];
+                }else if(Long.bitCount(colors[neighbor]) == 1){
+                    along &= ~colors[neighbor];
+                }
+            }
+            if(along != 0){
+                keptTypes |= 1 << m;
+                support |= along;
+            }
+        }
+        boolean changed = keptTypes != types[cell] || support != colors[cell];
+        types[cell] = keptTypes;
+        colors[cell] = support;
+        contradiction = support == 0;
+        return changed;
+    }
+
+    private boolean reviseEndpoint(int cell){
+        long color = colors[cell];
+        int possible = 0;
+        int fixed = 0;
+        int only = -1;
+        for(int[] delta : FlowGame.DELTAS){
+            int neighbor = neighbor(cell, delta);
+            if(neighbor < 0 || (colors[neighbor] & color) == 0){
+                continue;
+            }
+            possible++;
+            only = neighbor;
+            if(colors[neighbor] == color){
+                fixed++;
+            }
+        }
+        if(possible == 0 || fixed > 1){
+            contradiction = true;
+            return false;
+        }
+        if(possible == 1){
+            if(colors[only] == color){
+                return false;
+            }
+            colors[only] = color;
+            return true;
+        }
+        if(fixed == 1){
+            for(int[] delta : FlowGame.DELTAS){
+                int neighbor = neighbor(cell, delta);
+                if(neighbor >= 0 && colors[neighbor] != color){
+                    colors[neighbor] &= ~color;
+                    contradiction |= colors[neighbor] == 0;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private int neighbor(int cell, int[] delta){
+        int i = cell / cols + delta[1];
+        int j = cell % cols + delta[2];
+        if(i < 0 || i >= rows || j < 0 || j >= cols){
+            return -1;
+        }
+        return i * cols + j;
+    }
+
+    public boolean hasColor(int cell, int color){
+        return (colors[cell] & (1L << color)) != 0;
+    }
+
+    public boolean isColorFixed(int cell){
+        return Long.bitCount(colors[cell]) == 1;
+    }
+
+    public boolean hasType(int cell, int m){
+        return (types[cell] & (1 << m)) != 0;
+    }
+
+    public boolean isTypeFixed(int cell){
+        return Integer.bitCount(types[cell]) == 1;
+    }
+
+    // Cells whose color is fixed, endpoints included.
+    public int fixedColors(){
+        int count = 0;
+        for(int cell = 0;cell < colors.length;cell++){
+            if(isColorFixed(cell)){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Free cells whose direction type is fixed.
+    public int fixedTypes(){
+        int count = 0;
+        for(int cell = 0;cell < types.length;cell++){
+            if(cellColor[cell] < 0 && isTypeFixed(cell)){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Encode every puzzle with and without propagation and print how many
+    //  variables and clauses it saves.
+    public static void report(List<Path> paths, PrintStream out){
+        out.printf("%-32s %8s %8s %7s %9s %9s %7s%n", "puzzle", "vars", "after", "saved", "clauses", "after", "saved");
+        for(Path path : paths){
+            FlowGame plain = encode(path, false);
+            FlowGame propagated = encode(path, true);
+            if(plain == null || propagated == null){
+                out.printf("%-32s %s%n", path.getFileName(), plain == null ? "invalid" : "contradiction");
+                continue;
+            }
+            int vars = plain.numberOfVariables;
+            int clauses = plain.clauseCount();
+            int varsAfter = propagated.numberOfVariables;
+            int clausesAfter = propagated.clauseCount();
+            out.printf("%-32s %8d %8d %6.1f%% %9d %9d %6.1f%%%n", path.getFileName(),
+                    vars, varsAfter, 100.0 * (vars - varsAfter) / vars,
+                    clauses, clausesAfter, 100.0 * (clauses - clausesAfter) / clauses);
+        }
+    }
+
+    private static FlowGame encode(Path path, boolean propagate){
+        FlowGame game = new FlowGame();
+        game.parsePuzzle(path);
+        if(game.cells == null){
+            return null;
+        }
+        if(propagate){
+            game.propagation = run(game);
+            if(game.propagation.contradiction){
+                return null;
+            }
+        }
+        game.makeColorVariables();
+        game.makeDirectionVariables(game.numberOfVariables);
+        game.makeColorClauses();
+        game.makeDirectionClauses();
+        return game;
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+// One or more puzzles in a single file, held as raw bytes.
+//
+//  A pack is plain puzzle text: puzzles are separated by blank lines, and a
+//  line starting with '#' names the puzzle that follows it. An ordinary
+//  puzzle file is a pack of one. The file is read once, into one byte[] or,
+//  past MAP_THRESHOLD, a read-only memory map; open() only records where each
+//  puzzle starts and ends, and load() parses one puzzle straight from those
+//  bytes into a FlowGame. Loading uses absolute reads only, so any number of
+//  threads may load puzzles of one pack at once.
+//
+//      # first
+//      R.G.Y
+//      ..B.O
+//      ...
+//
+//      # second
+//      ...
+public class PuzzlePack {
+    // files this large are mapped rather than copied onto the heap
+    static final long MAP_THRESHOLD = 1 << 16;
+
+    final ByteBuffer bytes;
+    final String name;
+    // puzzle k is bytes[starts[k], ends[k])
+    int[] starts = new int[4];
+    int[] ends = new int[4];
+    String[] names = new String[4];
+    int size = 0;
+
+    PuzzlePack(ByteBuffer bytes, String name){
+        this.bytes = bytes;
+        this.name = name;
+        index();
+    }
+
+    public static PuzzlePack open(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            long length = channel.size();
+            if(length > Integer.MAX_VALUE){
+                throw new IOException("pack larger than 2 GB: " + path);
+            }
+            if(length >= MAP_THRESHOLD){
+                return new PuzzlePack(channel.map(FileChannel.MapMode.READ_ONLY, 0, length), name);
+            }
+        }
+        return new PuzzlePack(ByteBuffer.wrap(Files.readAllBytes(path)), name);
+    }
+
+    public static PuzzlePack read(InputStream input, String name) throws IOException {
+        try(InputStream in = input){
+            return new PuzzlePack(ByteBuffer.wrap(in.readAllBytes()), name);
+        }
+    }
+
+    public int size(){
+        return size;
+    }
+
+    // The '#' name of puzzle k, else the file name, numbered when the pack
+    //  holds more than one puzzle.
+    public String name(int k){
+        if(names[k] != null){
+            return names[k];
+        }
+        return size == 1 ? name : name + ":" + (k + 1);
+    }
+
+    // Parse puzzle k into game; false, with game untouched, if it is malformed.
+    public boolean load(int k, FlowGame game){
+        return game.parsePuzzle(bytes, starts[k], ends[k]);
+    }
+
+    // Split the bytes into puzzles at blank lines, taking '#' lines as names.
+    private void index(){
+        int limit = bytes.limit();
+        int start = -1;
+        int end = -1;
+        String pendingName = null;
+        int lineStart = 0;
+        while(lineStart < limit){
+            int lineEnd = lineStart;
+            while(lineEnd < limit && bytes.get(lineEnd) != '\n'){
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if(contentEnd > lineStart && bytes.get(contentEnd - 1) == '\r'){
+                contentEnd--;
+            }
+            if(contentEnd == lineStart){
+                if(start >= 0){
+                    add(start, end, pendingName);
+                    start = -1;
+                    pendingName = null;
+                }
+            }else if(bytes.get(lineStart) == '#'){
+                if(start >= 0){
+                    add(start, end, pendingName);
+                    start = -1;
+                }
+                pendingName = text(lineStart + 1, contentEnd).trim();
+            }else{
+                if(start < 0){
+                    start = lineStart;
+                }
+                end = contentEnd;
+            }
+            lineStart = lineEnd + 1;
+        }
+        if(start >= 0){
+            add(start, end, pendingName);
+        }
+    }
+
+    private void add(int start, int end, String puzzleName){
+        if(size == starts.length){
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        names[size] = puzzleName == null || puzzleName.isEmpty() ? null : puzzleName;
+        size++;
+    }
+
+    private String text(int start, int end){
+        return new String(copy(start, end), StandardCharsets.UTF_8);
+    }
+
+    private byte[] copy(int start, int end){
+        byte[] copy = new byte[end - start];
+        bytes.get(start, copy);
+        return copy;
+    }
+
+    // Write the puzzles of files into one pack, each under its file name.
+    public static int write(List<Path> files, Path pack) throws IOException {
+        int count = 0;
+        try(OutputStream out = Files.newOutputStream(pack)){
+            for(Path file : files){
+                PuzzlePack source = open(file);
+                for(int k = 0;k < source.size();k++){
+                    out.write(('#' + source.name(k) + '\n').getBytes(StandardCharsets.UTF_8));
+                    out.write(source.copy(source.starts[k], source.ends[k]));
+                    out.write("\n\n".getBytes(StandardCharsets.UTF_8));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
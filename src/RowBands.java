@@ -0,0 +1,99 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Runs an encoder over a grid split into bands of whole rows on a ForkJoin
+//  pool. Every band writes into its own ClauseStore, and the stores are
+//  appended to the target in band order once all are done, so the target
+//  receives exactly the clauses, in exactly the order, that one pass over
+//  all rows would give it, whatever the number of threads. With a single
+//  band the encoder writes straight into the target.
+//
+//  Pools are created once per thread count and shared, as Graph shares its
+//  grids. Each band measures what its pool thread allocates, so SolveStats
+//  can count it with the caller's own allocation.
+public class RowBands {
+    static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    public interface Encoder {
+        // Encode rows fromRow until toRow into sink.
+        void encode(ClauseSink sink, int band, int fromRow, int toRow);
+    }
+
+    public static ForkJoinPool pool(int threads){
+        return POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+    }
+
+    // First row of band b when rows are split into bands as evenly as possible.
+    public static int firstRow(int b, int rows, int bands){
+        return (int)((long)b * rows / bands);
+    }
+
+    // Returns the bytes allocated by pool threads for the bands, 0 when the
+    //  caller encoded everything itself or the JVM cannot tell.
+    public static long encode(int threads, int rows, int bands, ClauseSink target, Encoder encoder){
+        if(bands <= 1){
+            encoder.encode(target, 0, 0, rows);
+            return 0;
+        }
+        ClauseStore[] stores = new ClauseStore[bands];
+        long[] allocated = new long[bands];
+        pool(threads).invoke(new Split(encoder, stores, allocated, Thread.currentThread(), rows, 0, bands));
+        for(ClauseStore store : stores){
+            if(target instanceof ClauseStore){
+                ((ClauseStore)target).addAll(store);
+            }else{
+                int[] literals = store.literals();
+                for(int k = 0;k < store.size();k++){
+                    target.add(literals, store.start(k), store.length(k));
+                }
+            }
+        }
+        long total = 0;
+        for(long bytes : allocated){
+            total += bytes;
+        }
+        return total;
+    }
+
+    // Bands from until to, halved until one is left. Never serialized.
+    @SuppressWarnings("serial")
+    private static class Split extends RecursiveAction {
+        final Encoder encoder;
+        final ClauseStore[] stores;
+        // bytes each band's pool thread allocated for it
+        final long[] allocated;
+        // allocation on this thread is already the caller's own
+        final Thread caller;
+        final int rows;
+        final int from;
+        final int to;
+
+        Split(Encoder encoder, ClauseStore[] stores, long[] allocated, Thread caller, int rows, int from, int to){
+            this.encoder = encoder;
+            this.stores = stores;
+            this.allocated = allocated;
+            this.caller = caller;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from == 1){
+                long before = SolveStats.allocatedBytes();
+                ClauseStore store = new ClauseStore();
+                encoder.encode(store, from, firstRow(from, rows, stores.length), firstRow(from + 1, rows, stores.length));
+                stores[from] = store;
+                if(before >= 0 && Thread.currentThread() != caller){
+                    allocated[from] = SolveStats.allocatedBytes() - before;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Split(encoder, stores, allocated, caller, rows, from, middle),
+                    new Split(encoder, stores, allocated, caller, rows, middle, to));
+        }
+    }
+}
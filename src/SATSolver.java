@@ -0,0 +1,767 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// A conflict-driven clause-learning SAT solver.
+//
+//  Literals are given in DIMACS form (v or -v, v >= 1) and stored internally
+//  as 2 * v + sign. Every clause lives in one flat int arena:
+//
+//     arena[ref]     number of literals
+//     arena[ref + 1] flags (learnt, deleted) and LBD
+//     arena[ref + 2] first literal ...
+//
+//  The first two literals of a clause are the watched ones. Watch lists hold
+//  (clause ref, blocker literal) pairs in flat int arrays per literal.
+//
+//  stop() may be called from any thread; solve() then gives up with UNKNOWN
+//  at its next decision.
+public class SATSolver {
+    static final int UNKNOWN = 0;
+    static final int SATISFIABLE = 10;
+    static final int UNSATISFIABLE = 20;
+
+    static final int HEADER = 2;
+    static final int LEARNT = 1;
+    static final int DELETED = 2;
+    static final int LBD_SHIFT = 2;
+    static final int NO_REASON = -1;
+
+    static final byte TRUE = 1;
+    static final byte FALSE = -1;
+    static final byte UNDEF = 0;
+
+    int numVariables;
+    boolean ok = true;
+
+    // clause storage
+    int[] arena = new int[1 << 12];
+    int arenaSize = 0;
+    int wasted = 0;
+    int[] learnts = new int[256];
+    int learntsSize = 0;
+    int numClauses = 0;
+
+    // watch lists indexed by literal
+    int[][] watches;
+    int[] watchSize;
+
+    // assignment, indexed by literal (value) or variable (level, reason, phase)
+    byte[] litValue;
+    int[] level;
+    int[] reason;
+    byte[] phase;
+    int[] trail;
+    int trailSize = 0;
+    int[] trailLim;
+    int decisionLevel = 0;
+    int qhead = 0;
+
+    // VSIDS activity and decision heap
+    double[] activity;
+    double varInc = 1.0;
+    double varDecay = 0.95;
+    int[] heap;
+    int heapSize = 0;
+    int[] heapIndex;
+
+    // conflict analysis scratch space
+    byte[] seen;
+    int[] learnt;
+    int[] toClear;
+    int[] levelStamp;
+    int stamp = 0;
+
+    boolean[] model;
+
+    long conflicts = 0;
+    long decisions = 0;
+    long propagations = 0;
+    long restarts = 0;
+    long nextReduce = 2000;
+    int reduceIncrement = 300;
+    int restartBase = 100;
+    // phase of variables not assigned yet, see diversify()
+    byte initialPhase = FALSE;
+    // chance of deciding a random variable instead of the most active one
+    double randomFrequency = 0;
+    Random random;
+    volatile boolean stop = false;
+
+    public SATSolver(int numVariables){
+        this.numVariables = 0;
+        this.watches = new int[2][];
+        this.watchSize = new int[2];
+        this.litValue = new byte[2];
+        this.level = new int[1];
+        this.reason = new int[1];
+        this.phase = new byte[1];
+        this.trail = new int[1];
+        this.trailLim = new int[1];
+        this.activity = new double[1];
+        this.heap = new int[1];
+        this.heapIndex = new int[1];
+        this.seen = new byte[1];
+        this.learnt = new int[1];
+        this.toClear = new int[1];
+        this.levelStamp = new int[1];
+        ensureVariables(numVariables);
+    }
+
+    // Grow every per-variable array so that variables 1..n can be used.
+    public void ensureVariables(int n){
+        if(n <= numVariables){
+            return;
+        }
+        int oldLits = 2 * (numVariables + 1);
+        int vars = n + 1;
+        int lits = 2 * vars;
+
+        watches = Arrays.copyOf(watches, lits);
+        watchSize = Arrays.copyOf(watchSize, lits);
+        for(int l = oldLits;l < lits;l++){
+            watches[l] = new int[8];
+        }
+        litValue = Arrays.copyOf(litValue, lits);
+        level = Arrays.copyOf(level, vars);
+        reason = Arrays.copyOf(reason, vars);
+        phase = Arrays.copyOf(phase, vars);
+        trail = Arrays.copyOf(trail, vars);
+        trailLim = Arrays.copyOf(trailLim, vars);
+        activity = Arrays.copyOf(activity, vars);
+        heap = Arrays.copyOf(heap, vars);
+        heapIndex = Arrays.copyOf(heapIndex, vars);
+        seen = Arrays.copyOf(seen, vars);
+        learnt = Arrays.copyOf(learnt, Math.max(learnt.length, vars));
+        toClear = Arrays.copyOf(toClear, vars);
+        levelStamp = Arrays.copyOf(levelStamp, vars);
+
+        for(int v = numVariables + 1;v <= n;v++){
+            reason[v] = NO_REASON;
+            phase[v] = initialPhase;
+            heapIndex[v] = -1;
+            heapInsert(v);
+        }
+        numVariables = n;
+    }
+
+    static int toLit(int dimacs){
+        return dimacs > 0 ? dimacs << 1 : ((-dimacs) << 1) | 1;
+    }
+
+    public boolean addClause(int... lits){
+        return addClause(lits, 0, lits.length);
+    }
+
+    // Add a problem clause. Must be called between solve() calls, when the
+    //  solver sits at decision level 0. Returns false once the formula is
+    //  known to be unsatisfiable.
+    public boolean addClause(int[] lits, int from, int length){
+        if(!ok){
+            return false;
+        }
+        int maxVar = 0;
+        for(int k = from;k < from + length;k++){
+            maxVar = Math.max(maxVar, Math.abs(lits[k]));
+        }
+        ensureVariables(maxVar);
+        if(learnt.length < length){
+            learnt = Arrays.copyOf(learnt, length);
+        }
+        int[] buffer = learnt;
+        int size = 0;
+        for(int k = from;k < from + length;k++){
+            int var = Math.abs(lits[k]);
+            int lit = toLit(lits[k]);
+            byte value = litValue[lit];
+            if(value == TRUE || seen[var] == (byte)(2 - (lit & 1))){
+                // satisfied at level 0, or a tautology
+                clearSeen(buffer, size);
+                return true;
+            }
+            if(value == FALSE || seen[var] != 0){
+                continue;
+            }
+            seen[var] = (byte)(1 + (lit & 1));
+            buffer[size++] = lit;
+        }
+        clearSeen(buffer, size);
+
+        if(size == 0){
+            ok = false;
+            return false;
+        }
+        if(size == 1){
+            enqueue(buffer[0], NO_REASON);
+            ok = propagate() == NO_REASON;
+            return ok;
+        }
+        int ref = allocClause(buffer, size, false, 0);
+        attach(ref);
+        numClauses++;
+        return true;
+    }
+
+    // Add every clause of a store, reading its backing array directly.
+    public boolean addClauses(ClauseStore clauses){
+        int[] lits = clauses.literals();
+        for(int k = 0;k < clauses.size();k++){
+            if(!addClause(lits, clauses.start(k), clauses.length(k))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clearSeen(int[] lits, int size){
+        for(int k = 0;k < size;k++){
+            seen[lits[k] >> 1] = 0;
+        }
+    }
+
+    public int solve(){
+        model = null;
+        if(!ok){
+            return UNSATISFIABLE;
+        }
+        if(propagate() != NO_REASON){
+            ok = false;
+            return UNSATISFIABLE;
+        }
+        int status = UNKNOWN;
+        for(int n = 0;status == UNKNOWN && !stop;n++){
+            status = search(luby(n) * restartBase);
+            if(status == UNKNOWN){
+                restarts++;
+            }
+        }
+        if(status == UNSATISFIABLE){
+            ok = false;
+        }
+        cancelUntil(0);
+        return status;
+    }
+
+    // Make solve() return UNKNOWN soon; safe to call from another thread.
+    public void stop(){
+        stop = true;
+    }
+
+    // Vary the search from the default, for racing solvers on one problem:
+    //  activity ties are broken by seed, a fraction randomFrequency of the
+    //  decisions picks a random variable, and variables start out in the
+    //  given phase.
+    public void diversify(long seed, double randomFrequency, boolean positivePhase){
+        this.random = new Random(seed);
+        this.randomFrequency = randomFrequency;
+        this.initialPhase = positivePhase ? TRUE : FALSE;
+        for(int v = 1;v <= numVariables;v++){
+            if(litValue[v << 1] == UNDEF){
+                phase[v] = initialPhase;
+            }
+            activity[v] += random.nextDouble() * 1e-5;
+            if(heapIndex[v] >= 0){
+                heapUp(heapIndex[v]);
+            }
+        }
+    }
+
+    // Value of variable var in the last model found.
+    public boolean value(int var){
+        return model[var];
+    }
+
+    public boolean[] getModel(){
+        return model;
+    }
+
+    private int search(long conflictLimit){
+        long localConflicts = 0;
+        while(true){
+            int conflict = propagate();
+            if(conflict != NO_REASON){
+                conflicts++;
+                localConflicts++;
+                if(decisionLevel == 0){
+                    return UNSATISFIABLE;
+                }
+                int learntSize = analyze(conflict);
+                int backtrackLevel = 0;
+                if(learntSize > 1){
+                    backtrackLevel = level[learnt[1] >> 1];
+                }
+                cancelUntil(backtrackLevel);
+                if(learntSize == 1){
+                    enqueue(learnt[0], NO_REASON);
+                }else{
+                    int ref = allocClause(learnt, learntSize, true, computeLbd(learnt, learntSize));
+                    attach(ref);
+                    if(learntsSize == learnts.length){
+                        learnts = Arrays.copyOf(learnts, learntsSize * 2);
+                    }
+                    learnts[learntsSize++] = ref;
+                    enqueue(learnt[0], ref);
+                }
+                varInc /= varDecay;
+            }else{
+                if(localConflicts >= conflictLimit || stop){
+                    cancelUntil(0);
+                    return UNKNOWN;
+                }
+                if(conflicts >= nextReduce){
+                    nextReduce = conflicts + 2000 + (long)reduceIncrement * (conflicts / 2000);
+                    reduceLearnts();
+                }
+                int next = pickBranchLiteral();
+                if(next == 0){
+                    saveModel();
+                    return SATISFIABLE;
+                }
+                decisions++;
+                trailLim[decisionLevel++] = trailSize;
+                enqueue(next, NO_REASON);
+            }
+        }
+    }
+
+    private void saveModel(){
+        model = new boolean[numVariables + 1];
+        for(int v = 1;v <= numVariables;v++){
+            model[v] = litValue[v << 1] == TRUE;
+        }
+    }
+
+    private void enqueue(int lit, int from){
+        int var = lit >> 1;
+        litValue[lit] = TRUE;
+        litValue[lit ^ 1] = FALSE;
+        level[var] = decisionLevel;
+        reason[var] = from;
+        trail[trailSize++] = lit;
+    }
+
+    private void cancelUntil(int target){
+        if(decisionLevel <= target){
+            return;
+        }
+        int limit = trailLim[target];
+        for(int k = trailSize - 1;k >= limit;k--){
+            int lit = trail[k];
+            int var = lit >> 1;
+            litValue[lit] = UNDEF;
+            litValue[lit ^ 1] = UNDEF;
+            reason[var] = NO_REASON;
+            phase[var] = (lit & 1) == 0 ? TRUE : FALSE;
+            if(heapIndex[var] < 0){
+                heapInsert(var);
+            }
+        }
+        trailSize = limit;
+        qhead = limit;
+        decisionLevel = target;
+    }
+
+    // Two-watched-literal unit propagation. Returns the conflicting clause
+    //  or NO_REASON.
+    private int propagate(){
+        int conflict = NO_REASON;
+        while(qhead < trailSize){
+            int falseLit = trail[qhead++] ^ 1;
+            int[] ws = watches[falseLit];
+            int n = watchSize[falseLit];
+            int i = 0;
+            int j = 0;
+            propagations++;
+
+            while(i < n){
+                int ref = ws[i];
+                int blocker = ws[i + 1];
+                i += 2;
+                if(litValue[blocker] == TRUE){
+                    ws[j++] = ref;
+                    ws[j++] = blocker;
+                    continue;
+                }
+                if((arena[ref + 1] & DELETED) != 0){
+                    continue;
+                }
+                int base = ref + HEADER;
+                if(arena[base] == falseLit){
+                    arena[base] = arena[base + 1];
+                    arena[base + 1] = falseLit;
+                }
+                int first = arena[base];
+                if(first != blocker && litValue[first] == TRUE){
+                    ws[j++] = ref;
+                    ws[j++] = first;
+                    continue;
+                }
+
+                // look for a new literal to watch
+                int size = arena[ref];
+                boolean moved = false;
+                for(int k = 2;k < size;k++){
+                    int lit = arena[base + k];
+                    if(litValue[lit] != FALSE){
+                        arena[base + 1] = lit;
+                        arena[base + k] = falseLit;
+                        addWatch(lit, ref, first);
+                        moved = true;
+                        break;
+                    }
+                }
+                if(moved){
+                    continue;
+                }
+
+                ws[j++] = ref;
+                ws[j++] = first;
+                if(litValue[first] == FALSE){
+                    conflict = ref;
+                    qhead = trailSize;
+                    while(i < n){
+                        ws[j++] = ws[i++];
+                    }
+                }else{
+                    enqueue(first, ref);
+                }
+            }
+            watchSize[falseLit] = j;
+        }
+        return conflict;
+    }
+
+    private void addWatch(int lit, int ref, int blocker){
+        int size = watchSize[lit];
+        int[] ws = watches[lit];
+        if(size + 2 > ws.length){
+            ws = watches[lit] = Arrays.copyOf(ws, ws.length * 2);
+        }
+        ws[size] = ref;
+        ws[size + 1] = blocker;
+        watchSize[lit] = size + 2;
+    }
+
+    private void attach(int ref){
+        int base = ref + HEADER;
+        addWatch(arena[base], ref, arena[base + 1]);
+        addWatch(arena[base + 1], ref, arena[base]);
+    }
+
+    private int allocClause(int[] lits, int size, boolean isLearnt, int lbd){
+        int needed = arenaSize + HEADER + size;
+        if(needed > arena.length){
+            arena = Arrays.copyOf(arena, Math.max(needed, arena.length * 2));
+        }
+        int ref = arenaSize;
+        arena[ref] = size;
+        arena[ref + 1] = (isLearnt ? LEARNT : 0) | (lbd << LBD_SHIFT);
+        System.arraycopy(lits, 0, arena, ref + HEADER, size);
+        arenaSize = needed;
+        return ref;
+    }
+
+    // First-UIP conflict analysis. Leaves the learnt clause in learnt[],
+    //  asserting literal first and the highest remaining level second.
+    private int analyze(int conflict){
+        int pathCount = 0;
+        int p = -1;
+        int size = 1;
+        int index = trailSize - 1;
+        int ref = conflict;
+
+        do{
+            int base = ref + HEADER;
+            int clauseSize = arena[ref];
+            if((arena[ref + 1] & LEARNT) != 0){
+                bumpClause(ref);
+            }
+            for(int k = (p == -1) ? 0 : 1;k < clauseSize;k++){
+                int q = arena[base + k];
+                int var = q >> 1;
+                if(seen[var] == 0 && level[var] > 0){
+                    bumpVariable(var);
+                    seen[var] = 1;
+                    if(level[var] >= decisionLevel){
+                        pathCount++;
+                    }else{
+                        learnt[size++] = q;
+                    }
+                }
+            }
+            while(seen[trail[index] >> 1] == 0){
+                index--;
+            }
+            p = trail[index--];
+            ref = reason[p >> 1];
+            seen[p >> 1] = 0;
+            pathCount--;
+        }while(pathCount > 0);
+        learnt[0] = p ^ 1;
+
+        // drop literals implied by the rest of the clause
+        System.arraycopy(learnt, 1, toClear, 0, size - 1);
+        int kept = 1;
+        for(int k = 1;k < size;k++){
+            int var = learnt[k] >> 1;
+            if(reason[var] == NO_REASON || !redundant(learnt[k])){
+                learnt[kept++] = learnt[k];
+            }
+        }
+        for(int k = 0;k < size - 1;k++){
+            seen[toClear[k] >> 1] = 0;
+        }
+        size = kept;
+
+        // move the literal with the highest level to position 1
+        if(size > 1){
+            int max = 1;
+            for(int k = 2;k < size;k++){
+                if(level[learnt[k] >> 1] > level[learnt[max] >> 1]){
+                    max = k;
+                }
+            }
+            int tmp = learnt[1];
+            learnt[1] = learnt[max];
+            learnt[max] = tmp;
+        }
+        return size;
+    }
+
+    // A literal is redundant when every literal of its reason is already in
+    //  the learnt clause or fixed at level 0.
+    private boolean redundant(int lit){
+        int ref = reason[lit >> 1];
+        int base = ref + HEADER;
+        int size = arena[ref];
+        for(int k = 1;k < size;k++){
+            int var = arena[base + k] >> 1;
+            if(seen[var] == 0 && level[var] > 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int computeLbd(int[] lits, int size){
+        stamp++;
+        int lbd = 0;
+        for(int k = 0;k < size;k++){
+            int l = level[lits[k] >> 1];
+            if(levelStamp[l] != stamp){
+                levelStamp[l] = stamp;
+                lbd++;
+            }
+        }
+        return lbd;
+    }
+
+    // Learnt clauses taking part in a conflict get their LBD refreshed.
+    private void bumpClause(int ref){
+        int flags = arena[ref + 1];
+        int lbd = flags >>> LBD_SHIFT;
+        if(lbd <= 2){
+            return;
+        }
+        int fresh = computeLbd(arena, ref + HEADER, arena[ref]);
+        if(fresh < lbd){
+            arena[ref + 1] = (flags & (LEARNT | DELETED)) | (fresh << LBD_SHIFT);
+        }
+    }
+
+    private int computeLbd(int[] lits, int from, int size){
+        stamp++;
+        int lbd = 0;
+        for(int k = from;k < from + size;k++){
+            int l = level[lits[k] >> 1];
+            if(levelStamp[l] != stamp){
+                levelStamp[l] = stamp;
+                lbd++;
+            }
+        }
+        return lbd;
+    }
+
+    // Delete roughly half of the learnt clauses, keeping the ones with the
+    //  lowest LBD, the glue clauses (LBD <= 2) and any clause that is
+    //  currently the reason for an assignment.
+    private void reduceLearnts(){
+        long[] keys = new long[learntsSize];
+        for(int k = 0;k < learntsSize;k++){
+            int ref = learnts[k];
+            keys[k] = ((long)(arena[ref + 1] >>> LBD_SHIFT) << 32) | (learntsSize - k);
+        }
+        Arrays.sort(keys);
+        int limit = learntsSize / 2;
+        boolean[] remove = new boolean[learntsSize];
+        for(int k = limit;k < learntsSize;k++){
+            int index = learntsSize - (int)keys[k];
+            int ref = learnts[index];
+            if((arena[ref + 1] >>> LBD_SHIFT) > 2 && !locked(ref)){
+                remove[index] = true;
+            }
+        }
+        int kept = 0;
+        for(int k = 0;k < learntsSize;k++){
+            int ref = learnts[k];
+            if(remove[k]){
+                arena[ref + 1] |= DELETED;
+                wasted += HEADER + arena[ref];
+            }else{
+                learnts[kept++] = ref;
+            }
+        }
+        learntsSize = kept;
+        if(wasted > arenaSize / 2){
+            collectGarbage();
+        }
+    }
+
+    private boolean locked(int ref){
+        int lit = arena[ref + HEADER];
+        return litValue[lit] == TRUE && reason[lit >> 1] == ref;
+    }
+
+    // Compact the arena, then rebuild watches and remap reasons and learnts.
+    private void collectGarbage(){
+        int[] fresh = new int[Math.max(arena.length / 2, arenaSize - wasted + 16)];
+        int size = 0;
+        int ref = 0;
+        while(ref < arenaSize){
+            int length = arena[ref];
+            if((arena[ref + 1] & DELETED) == 0){
+                System.arraycopy(arena, ref, fresh, size, HEADER + length);
+                // remember where the clause went
+                arena[ref + 1] = size;
+                size += HEADER + length;
+            }
+            ref += HEADER + length;
+        }
+        // arena still holds forwarding information for live clauses
+        for(int v = 1;v <= numVariables;v++){
+            if(reason[v] != NO_REASON){
+                reason[v] = forward(reason[v]);
+            }
+        }
+        for(int k = 0;k < learntsSize;k++){
+            learnts[k] = forward(learnts[k]);
+        }
+        arena = fresh;
+        arenaSize = size;
+        wasted = 0;
+
+        for(int l = 0;l < watchSize.length;l++){
+            watchSize[l] = 0;
+        }
+        ref = 0;
+        while(ref < arenaSize){
+            attach(ref);
+            ref += HEADER + arena[ref];
+        }
+    }
+
+    private int forward(int ref){
+        return arena[ref + 1];
+    }
+
+    private int pickBranchLiteral(){
+        if(random != null && heapSize > 0 && random.nextDouble() < randomFrequency){
+            int var = heap[random.nextInt(heapSize)];
+            if(litValue[var << 1] == UNDEF){
+                return phase[var] == TRUE ? var << 1 : (var << 1) | 1;
+            }
+        }
+        while(heapSize > 0){
+            int var = heapRemoveMax();
+            if(litValue[var << 1] == UNDEF){
+                return phase[var] == TRUE ? var << 1 : (var << 1) | 1;
+            }
+        }
+        return 0;
+    }
+
+    private void bumpVariable(int var){
+        activity[var] += varInc;
+        if(activity[var] > 1e100){
+            for(int v = 1;v <= numVariables;v++){
+                activity[v] *= 1e-100;
+            }
+            varInc *= 1e-100;
+        }
+        if(heapIndex[var] >= 0){
+            heapUp(heapIndex[var]);
+        }
+    }
+
+    // The Luby restart sequence 1 1 2 1 1 2 4 ...
+    static long luby(int n){
+        int size = 1;
+        int seq = 0;
+        while(size < n + 1){
+            seq++;
+            size = 2 * size + 1;
+        }
+        long x = n;
+        while(size - 1 != x){
+            size = (size - 1) >> 1;
+            seq--;
+            x = x % size;
+        }
+        return 1L << seq;
+    }
+
+    private void heapInsert(int var){
+        heapIndex[var] = heapSize;
+        heap[heapSize++] = var;
+        heapUp(heapSize - 1);
+    }
+
+    private int heapRemoveMax(){
+        int top = heap[0];
+        heapIndex[top] = -1;
+        heapSize--;
+        if(heapSize > 0){
+            heap[0] = heap[heapSize];
+            heapIndex[heap[0]] = 0;
+            heapDown(0);
+        }
+        return top;
+    }
+
+    private void heapUp(int i){
+        int var = heap[i];
+        double act = activity[var];
+        while(i > 0){
+            int parent = (i - 1) >> 1;
+            if(activity[heap[parent]] >= act){
+                break;
+            }
+            heap[i] = heap[parent];
+            heapIndex[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = var;
+        heapIndex[var] = i;
+    }
+
+    private void heapDown(int i){
+        int var = heap[i];
+        double act = activity[var];
+        while(true){
+            int child = 2 * i + 1;
+            if(child >= heapSize){
+                break;
+            }
+            if(child + 1 < heapSize && activity[heap[child + 1]] > activity[heap[child]]){
+                child++;
+            }
+            if(activity[heap[child]] <= act){
+                break;
+            }
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = var;
+        heapIndex[var] = i;
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.Arrays;
+
+// Passes clauses on to another sink with the constant literals TRUE and
+//  FALSE resolved: a clause holding TRUE is dropped, FALSE literals are left
+//  out. Lets the encoders treat a cell fixed by Propagation like any other,
+//  while the fixed values never reach the clauses.
+public class SimplifyingSink implements ClauseSink {
+    static final int TRUE = Integer.MAX_VALUE;
+    static final int FALSE = -TRUE;
+
+    ClauseSink target;
+    int[] clause = new int[16];
+    int length = 0;
+    boolean satisfied = false;
+
+    public SimplifyingSink(ClauseSink target){
+        this.target = target;
+    }
+
+    @Override
+    public void addLiteral(int literal){
+        if(literal == TRUE){
+            satisfied = true;
+        }else if(literal != FALSE && !satisfied){
+            if(length == clause.length){
+                clause = Arrays.copyOf(clause, length * 2);
+            }
+            clause[length++] = literal;
+        }
+    }
+
+    // An empty result is passed on as the empty clause, making the formula
+    //  unsatisfiable as it should be.
+    @Override
+    public void endClause(){
+        if(!satisfied){
+            target.add(clause, 0, length);
+        }
+        length = 0;
+        satisfied = false;
+    }
+
+    @Override
+    public int clauseCount(){
+        return target.clauseCount();
+    }
+}
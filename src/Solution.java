@@ -0,0 +1,141 @@
+import java.nio.ByteBuffer;
+
+// A decoded solution grid. For every cell, colors holds the color index and
+//  flows the direction bits (LEFT, RIGHT, TOP, BOTTOM) the flow leaves the
+//  cell by: two bits for a path cell, one for an endpoint.
+//
+//  write() and read() store a solution compactly for files and the wire:
+//
+//      int rows, int cols, byte colors, byte letters, letters ASCII bytes
+//      rows * cols cells: color << 4 | flow in one byte when colors <= 16,
+//                         else color and flow in a byte each
+//
+//  letters is the color count, or 0 when colorLetters is null.
+public class Solution {
+    // colors up to this many pack with the flow bits into one byte per cell
+    static final int PACKED_COLORS = 16;
+
+    int rows;
+    int cols;
+    byte[] colors;
+    byte[] flows;
+    char[] colorLetters;
+
+    public Solution(int rows, int cols, char[] colorLetters){
+        this.rows = rows;
+        this.cols = cols;
+        this.colors = new byte[rows * cols];
+        this.flows = new byte[rows * cols];
+        this.colorLetters = colorLetters;
+    }
+
+    public int color(int i, int j){
+        return colors[i * cols + j];
+    }
+
+    public int flow(int i, int j){
+        return flows[i * cols + j];
+    }
+
+    // Number of colors: that of the letters, else one past the highest used.
+    public int colorCount(){
+        if(colorLetters != null){
+            return colorLetters.length;
+        }
+        int count = 0;
+        for(byte color : colors){
+            count = Math.max(count, color + 1);
+        }
+        return count;
+    }
+
+    // Bytes write() takes.
+    public int byteSize(){
+        int colorCount = colorCount();
+        int letters = colorLetters == null ? 0 : colorCount;
+        return 2 * Integer.BYTES + 2 + letters + (colorCount <= PACKED_COLORS ? 1 : 2) * colors.length;
+    }
+
+    // Append the solution to out at its position.
+    public void write(ByteBuffer out){
+        int colorCount = colorCount();
+        out.putInt(rows);
+        out.putInt(cols);
+        out.put((byte)colorCount);
+        out.put((byte)(colorLetters == null ? 0 : colorCount));
+        if(colorLetters != null){
+            for(char letter : colorLetters){
+                out.put((byte)letter);
+            }
+        }
+        if(colorCount <= PACKED_COLORS){
+            for(int cell = 0;cell < colors.length;cell++){
+                out.put((byte)(colors[cell] << 4 | flows[cell]));
+            }
+        }else{
+            for(int cell = 0;cell < colors.length;cell++){
+                out.put(colors[cell]);
+                out.put(flows[cell]);
+            }
+        }
+    }
+
+    // Read a solution written by write() from in at its position. Throws
+    //  IllegalArgumentException, before allocating anything large, when in
+    //  does not hold a whole, consistent solution there.
+    public static Solution read(ByteBuffer in){
+        if(in.remaining() < 2 * Integer.BYTES + 2){
+            throw new IllegalArgumentException("truncated solution");
+        }
+        int rows = in.getInt();
+        int cols = in.getInt();
+        if(rows <= 0 || cols <= 0){
+            throw new IllegalArgumentException("not a solution: " + rows + " x " + cols);
+        }
+        int colorCount = in.get() & 0xff;
+        int letters = in.get() & 0xff;
+        long cellBytes = (long)rows * cols * (colorCount <= PACKED_COLORS ? 1 : 2);
+        if((letters != 0 && letters != colorCount) || letters + cellBytes > in.remaining()){
+            throw new IllegalArgumentException("truncated solution");
+        }
+        char[] colorLetters = null;
+        if(letters > 0){
+            colorLetters = new char[letters];
+            for(int c = 0;c < letters;c++){
+                colorLetters[c] = (char)(in.get() & 0xff);
+            }
+        }
+        Solution solution = new Solution(rows, cols, colorLetters);
+        if(colorCount <= PACKED_COLORS){
+            for(int cell = 0;cell < solution.colors.length;cell++){
+                int packed = in.get() & 0xff;
+                solution.colors[cell] = (byte)(packed >>> 4);
+                solution.flows[cell] = (byte)(packed & 0xf);
+            }
+        }else{
+            for(int cell = 0;cell < solution.colors.length;cell++){
+                solution.colors[cell] = in.get();
+                solution.flows[cell] = in.get();
+            }
+        }
+        for(int cell = 0;cell < solution.colors.length;cell++){
+            if((solution.colors[cell] & 0xff) >= colorCount){
+                throw new IllegalArgumentException("color out of range");
+            }
+        }
+        return solution;
+    }
+
+    // One color letter per cell, one row per line.
+    @Override
+    public String toString(){
+        StringBuilder out = new StringBuilder(rows * (cols + 1));
+        for(int i = 0;i < rows;i++){
+            for(int j = 0;j < cols;j++){
+                out.append(colorLetters[color(i, j)]);
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Solved puzzles by canonical fingerprint, so that a repeat of a puzzle, or
+//  a rotation, reflection or recoloring of one, is answered without being
+//  encoded or solved. Solutions are kept in the canonical frame (see
+//  CanonicalForm) and evicted least recently used first once they take more
+//  than maxBytes. All methods are synchronized; one cache may serve every
+//  thread of a batch.
+//
+//  A cache opened on a file also appends every new solution to it through a
+//  memory map, and reads the file back on the next open. The file is a log:
+//
+//      int MAGIC, long bytes used
+//      per solution: long high, long low, the solution as Solution.write()
+//                    stores it
+//
+//  Evicting a solution does not remove it from the file. A file that ends
+//  in an incomplete or corrupt record, say after a crash, is read up to
+//  there and appended to from there. One cache at a time holds the file,
+//  through a lock taken by open().
+public class SolutionCache {
+    static final int MAGIC = 0x464c4332; // "FLC2"
+    static final int HEADER = Integer.BYTES + Long.BYTES;
+    // a cached solution costs its two arrays plus roughly this much
+    static final int ENTRY_OVERHEAD = 128;
+    static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    final long maxBytes;
+    long bytes = 0;
+    final LinkedHashMap<CanonicalForm.Fingerprint, Solution> entries = new LinkedHashMap<>(16, 0.75f, true);
+    long hits = 0;
+    long misses = 0;
+
+    FileChannel channel;
+    MappedByteBuffer log;
+
+    public SolutionCache(long maxBytes){
+        this.maxBytes = maxBytes;
+    }
+
+    // A cache kept in file, which is created if missing.
+    public static SolutionCache open(Path file, long maxBytes) throws IOException {
+        SolutionCache cache = new SolutionCache(maxBytes);
+        cache.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try{
+            lock = cache.channel.tryLock();
+        }catch(OverlappingFileLockException e){
+            lock = null;
+        }
+        if(lock == null){
+            cache.channel.close();
+            throw new IOException("solution cache in use by another process: " + file);
+        }
+        long size = cache.channel.size();
+        cache.log = cache.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, 1 << 16));
+        if(size == 0){
+            cache.log.putInt(0, MAGIC);
+            cache.log.putLong(Integer.BYTES, HEADER);
+        }else if(size < HEADER || cache.log.getInt(0) != MAGIC){
+            cache.channel.close();
+            throw new IOException("not a solution cache: " + file);
+        }
+        cache.replay();
+        return cache;
+    }
+
+    // The solution of the puzzle of form, in its canonical frame, or null. A
+    //  solution stored under the same fingerprint that does not fit the
+    //  puzzle, should two puzzles ever collide, is a miss.
+    public synchronized Solution get(CanonicalForm form){
+        Solution solution = entries.get(form.fingerprint);
+        if(solution == null || !fits(solution, form)){
+            misses++;
+            return null;
+        }
+        hits++;
+        return solution;
+    }
+
+    // Whether canonical has the size of the puzzle of form, its colors at the
+    //  endpoints, and only its colors and direction bits elsewhere.
+    private static boolean fits(Solution canonical, CanonicalForm form){
+        if(canonical.rows != form.rows || canonical.cols != form.cols){
+            return false;
+        }
+        for(int cell = 0;cell < form.cells.length;cell++){
+            int color = canonical.colors[cell];
+            if(color < 0 || color >= form.colorOf.length || (canonical.flows[cell] & ~0xf) != 0){
+                return false;
+            }
+            if(form.cells[cell] != FlowGame.FREE && color != form.cells[cell]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Remember a solution given in the canonical frame of form.
+    public synchronized void put(CanonicalForm form, Solution canonical){
+        if(entries.containsKey(form.fingerprint)){
+            return;
+        }
+        add(form.fingerprint, canonical);
+        if(log != null){
+            append(form.fingerprint, canonical);
+        }
+    }
+
+    private void add(CanonicalForm.Fingerprint fingerprint, Solution canonical){
+        if(entries.put(fingerprint, canonical) == null){
+            bytes += cost(canonical);
+        }
+        Iterator<Map.Entry<CanonicalForm.Fingerprint, Solution>> eldest = entries.entrySet().iterator();
+        while(bytes > maxBytes && eldest.hasNext()){
+            bytes -= cost(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private static long cost(Solution solution){
+        return 2L * solution.colors.length + ENTRY_OVERHEAD;
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    public synchronized long hits(){
+        return hits;
+    }
+
+    public synchronized long misses(){
+        return misses;
+    }
+
+    // Load every complete record; the header is then set to end after the
+    //  last of them, so a damaged tail is overwritten by the next append.
+    private void replay(){
+        long used = log.getLong(Integer.BYTES);
+        ByteBuffer in = log.duplicate().position(HEADER).limit((int)Math.max(HEADER, Math.min(used, log.capacity())));
+        int complete = HEADER;
+        while(in.remaining() >= 2 * Long.BYTES){
+            long high = in.getLong();
+            long low = in.getLong();
+            try{
+                add(new CanonicalForm.Fingerprint(high, low), Solution.read(in));
+            }catch(IllegalArgumentException e){
+                break;
+            }
+            complete = in.position();
+        }
+        if(complete != used){
+            log.putLong(Integer.BYTES, complete);
+        }
+    }
+
+    private void append(CanonicalForm.Fingerprint fingerprint, Solution canonical){
+        int used = (int)log.getLong(Integer.BYTES);
+        int length = 2 * Long.BYTES + canonical.byteSize();
+        try{
+            if(used + length > log.capacity()){
+                long capacity = Math.max(2L * log.capacity(), (long)used + length);
+                if(capacity > Integer.MAX_VALUE){
+                    return;
+                }
+                log = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        }catch(IOException e){
+            // keep serving from memory; the file just stops growing
+            return;
+        }
+        ByteBuffer out = log.duplicate().position(used);
+        out.putLong(fingerprint.high);
+        out.putLong(fingerprint.low);
+        canonical.write(out);
+        // the record is complete before the header counts it
+        log.putLong(Integer.BYTES, used + length);
+    }
+
+    // Flush the file, if any, and release it.
+    public synchronized void close() throws IOException {
+        if(log != null){
+            log.force();
+            log = null;
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Draws solutions as box-drawing grids, path cells as the DIRECTION_CHARS of
+//  their flow and endpoints as their color letter, optionally on the
+//  ANSI_LOOKUP colors of the terminal.
+//
+//  Every glyph and escape sequence is encoded to UTF-8 once, up front, and
+//  cells are copied as bytes into one buffer that is reused for every
+//  solution and written out only when full or on flush(), so drawing a
+//  solution allocates nothing however many are drawn. A color escape is
+//  only emitted where the color changes along a row.
+public class SolutionRenderer {
+    static final int BUFFER_SIZE = 1 << 16;
+    // the longest a cell can take: an escape sequence and a glyph
+    static final int MAX_CELL_BYTES = 16;
+
+    // FLOW_GLYPHS[flow] is the UTF-8 of the DIRECTION_CHARS entry of a path
+    //  cell's two flow bits
+    static final byte[][] FLOW_GLYPHS = new byte[16][];
+    // ESCAPES[letter] sets the ANSI_LOOKUP color of a color letter
+    static final byte[][] ESCAPES = new byte[128][];
+    static final byte[] RESET = "\u001b[0m".getBytes(StandardCharsets.UTF_8);
+
+    static {
+        for(Map.Entry<Integer, String> entry : FlowGame.DIRECTION_CHARS.entrySet()){
+            FLOW_GLYPHS[entry.getKey()] = entry.getValue().getBytes(StandardCharsets.UTF_8);
+        }
+        for(Map.Entry<String, Integer> entry : FlowGame.ANSI_LOOKUP.entrySet()){
+            ESCAPES[entry.getKey().charAt(0)] = ("\u001b[" + entry.getValue() + "m").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    final OutputStream out;
+    final boolean ansi;
+    final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    public SolutionRenderer(OutputStream out, boolean ansi){
+        this.out = out;
+        this.ansi = ansi;
+    }
+
+    // Draw one solution, a line per row; it reaches out by flush() at latest.
+    public void render(Solution solution) throws IOException {
+        for(int i = 0;i < solution.rows;i++){
+            byte[] current = null;
+            for(int j = 0;j < solution.cols;j++){
+                if(buffer.remaining() < MAX_CELL_BYTES){
+                    drain();
+                }
+                int cell = i * solution.cols + j;
+                char letter = solution.colorLetters == null ? '?' : solution.colorLetters[solution.colors[cell]];
+                if(ansi){
+                    byte[] escape = letter < ESCAPES.length ? ESCAPES[letter] : null;
+                    if(escape != current){
+                        buffer.put(escape == null ? RESET : escape);
+                        current = escape;
+                    }
+                }
+                byte[] glyph = FLOW_GLYPHS[solution.flows[cell]];
+                if(glyph == null){
+                    // an endpoint, or a cell no flow reached
+                    buffer.put((byte)letter);
+                }else{
+                    buffer.put(glyph);
+                }
+            }
+            if(buffer.remaining() < RESET.length + 1){
+                drain();
+            }
+            if(current != null){
+                buffer.put(RESET);
+            }
+            buffer.put((byte)'\n');
+        }
+    }
+
+    // Write out everything rendered so far.
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+}
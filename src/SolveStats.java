@@ -0,0 +1,163 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+// Per-phase measurements of one reduceToSAT() run: wall time, the total
+//  bytes allocated by the solving thread and by the RowBands and Portfolio
+//  threads working for it, and the variable and clause counts reached at the
+//  end of the phase.
+public class SolveStats {
+    static final int PARSE = 0;
+    static final int CACHE = 1;
+    static final int PRECHECK = 2;
+    static final int BITBOARD = 3;
+    static final int PROPAGATE = 4;
+    static final int COLOR_VARIABLES = 5;
+    static final int DIRECTION_VARIABLES = 6;
+    static final int COLOR_CLAUSES = 7;
+    static final int DIRECTION_CLAUSES = 8;
+    static final int SOLVE = 9;
+    static final int DECODE = 10;
+
+    static final String[] PHASES = {
+            "parse",
+            "cache",
+            "precheck",
+            "bitboard",
+            "propagate",
+            "color variables",
+            "direction variables",
+            "color clauses",
+            "direction clauses",
+            "solve",
+            "decode"};
+
+    static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    long[] nanos = new long[PHASES.length];
+    long[] allocatedBytes = new long[PHASES.length];
+    int[] variables = new int[PHASES.length];
+    int[] clauses = new int[PHASES.length];
+    boolean[] ran = new boolean[PHASES.length];
+    boolean solved;
+    // answered from the SolutionCache
+    boolean cached;
+    // why the pre-check rejected the puzzle without encoding it, OK otherwise
+    PreCheck.Reason rejected = PreCheck.Reason.OK;
+    int solveIterations;
+    int blockedCycles;
+    // the Portfolio configuration that solved the puzzle, null without one
+    String winner;
+    // from the start of the race until the winner finished
+    long winnerNanos;
+
+    long phaseStart;
+    long allocationStart;
+    long workerAllocation;
+
+    void begin(){
+        allocationStart = allocatedBytes();
+        workerAllocation = 0;
+        phaseStart = System.nanoTime();
+    }
+
+    // Count bytes other threads allocated for the phase under way.
+    void addAllocated(long bytes){
+        workerAllocation += bytes;
+    }
+
+    void end(int phase, int variableCount, int clauseCount){
+        nanos[phase] = System.nanoTime() - phaseStart;
+        long allocated = allocatedBytes();
+        allocatedBytes[phase] = allocated < 0 ? -1 : allocated - allocationStart + workerAllocation;
+        variables[phase] = variableCount;
+        clauses[phase] = clauseCount;
+        ran[phase] = true;
+    }
+
+    public boolean isSolved(){
+        return solved;
+    }
+
+    public boolean isCached(){
+        return cached;
+    }
+
+    public PreCheck.Reason rejected(){
+        return rejected;
+    }
+
+    // Number of solver runs, one more than the rounds of loop blocking.
+    public int solveIterations(){
+        return solveIterations;
+    }
+
+    public int blockedCycles(){
+        return blockedCycles;
+    }
+
+    public String winner(){
+        return winner;
+    }
+
+    public long winnerNanos(){
+        return winnerNanos;
+    }
+
+    public long nanos(int phase){
+        return nanos[phase];
+    }
+
+    public long allocatedBytes(int phase){
+        return allocatedBytes[phase];
+    }
+
+    public long totalNanos(){
+        long total = 0;
+        for(long n : nanos){
+            total += n;
+        }
+        return total;
+    }
+
+    public int variableCount(){
+        return variables[DECODE] > 0 ? variables[DECODE] : variables[SOLVE];
+    }
+
+    public int clauseCount(){
+        return clauses[DECODE] > 0 ? clauses[DECODE] : clauses[SOLVE];
+    }
+
+    // Bytes allocated so far by the current thread, or -1 when the JVM
+    //  cannot tell.
+    static long allocatedBytes(){
+        if(THREADS instanceof com.sun.management.ThreadMXBean){
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)THREADS;
+            if(threads.isThreadAllocatedMemoryEnabled()){
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-20s %10s %14s %10s %10s%n", "phase", "ms", "total alloc KB", "vars", "clauses"));
+        for(int p = 0;p < PHASES.length;p++){
+            if(!ran[p]){
+                continue;
+            }
+            out.append(String.format("%-20s %10.3f %14s %10d %10d%n", PHASES[p], nanos[p] / 1e6,
+                    allocatedBytes[p] < 0 ? "n/a" : String.valueOf(allocatedBytes[p] / 1024),
+                    variables[p], clauses[p]));
+        }
+        String status = cached ? "solved (cached)" : solved ? "solved"
+                : rejected != PreCheck.Reason.OK ? "no solution (" + rejected.name().toLowerCase() + ")" : "no solution";
+        out.append(String.format("%-20s %10.3f  %s%n", "total", totalNanos() / 1e6, status));
+        out.append(String.format("solver runs %d, loops blocked %d%n", solveIterations, blockedCycles));
+        if(winner != null){
+            out.append(String.format("portfolio winner: %s after %.3f ms%n", winner, winnerNanos / 1e6));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,372 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// A long-running solver that takes puzzles from stdin or a local socket, so
+//  a stream of requests pays for JVM startup and class loading only once.
+//
+//  A request is a puzzle in the format of src/puzzles/, ended by a blank
+//  line, optionally preceded by a '#' line naming it as in a PuzzlePack. A
+//  line "!stats" outside a puzzle asks for the counters instead. Every
+//  request gets one response, written when it is done, so responses may
+//  come out of order; the first line carries the name, or else the number
+//  of the request within its connection:
+//
+//      solved <id> <ms>          followed by the solution, one row per line
+//      unsolved <id> <ms> <why>  no solution, why as in a batch status
+//      timeout <id> <ms>         not solved within the request timeout
+//      invalid <id>              the puzzle did not parse
+//      error <id> <ms> <what>    solving failed, e.g. out of memory
+//      stats requests=... p50=... p99=...
+//
+//  and a blank line. Requests are solved on a fixed pool of threads with a
+//  queue of queueDepth in front of it. A connection that gets that far
+//  ahead blocks in its reads until a request finishes, which pushes back on
+//  the client through the pipe or socket. The timeout runs from the moment
+//  a request is read, so time spent queued counts, and stops the solver
+//  cooperatively; parsing and encoding are not interrupted.
+public class SolverServer {
+    static final int MAX_REQUEST_BYTES = 1 << 20;
+    // latencies of the most recent requests kept for the percentiles
+    static final int LATENCY_SAMPLES = 1 << 12;
+    static final String STATS = "!stats";
+    // a connection's Phaser holds one party per request in the pool, and one
+    //  for itself
+    static final int MAX_IN_FLIGHT = 65535 - 1;
+
+    final int threads;
+    final int queueDepth;
+    final long timeoutMillis;
+    FlowGame.Engine engine = FlowGame.Engine.SAT;
+    SolutionCache cache;
+
+    final ThreadPoolExecutor workers;
+    // one permit per request the pool can hold, running or queued
+    final Semaphore slots;
+    final ScheduledExecutorService timer;
+
+    final long startTime = System.nanoTime();
+    long requests = 0;
+    long solved = 0;
+    long unsolved = 0;
+    long timeouts = 0;
+    long invalid = 0;
+    long errors = 0;
+    final long[] latencies = new long[LATENCY_SAMPLES];
+    long latencyCount = 0;
+
+    public SolverServer(int threads, int queueDepth, long timeoutMillis){
+        if(threads < 1 || queueDepth < 0 || (long)threads + queueDepth > MAX_IN_FLIGHT){
+            throw new IllegalArgumentException("threads plus queue must be between 1 and " + MAX_IN_FLIGHT);
+        }
+        this.threads = threads;
+        this.queueDepth = queueDepth;
+        this.timeoutMillis = timeoutMillis;
+        // the queue itself is unbounded: slots keeps it within queueDepth, and
+        //  a bound here could reject a task while a finishing worker still
+        //  holds its thread after releasing its slot
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        this.slots = new Semaphore(threads + queueDepth);
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "solver-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static class Request {
+        final String id;
+        final byte[] puzzle;
+        final int length;
+        final long received = System.nanoTime();
+
+        Request(String id, byte[] puzzle, int length){
+            this.id = id;
+            this.puzzle = puzzle;
+            this.length = length;
+        }
+    }
+
+    // Serve one connection until its input ends and every request read from
+    //  it has been answered.
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        Phaser pending = new Phaser(1);
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))){
+            ByteArrayOutputStream puzzle = new ByteArrayOutputStream();
+            String name = null;
+            int number = 0;
+            boolean tooLong = false;
+            String line;
+            do{
+                line = reader.readLine();
+                if(line != null && !line.isEmpty()){
+                    if(puzzle.size() == 0 && line.equals(STATS)){
+                        respond(writer, stats() + "\n\n");
+                    }else if(puzzle.size() == 0 && line.startsWith("#")){
+                        name = line.substring(1).trim();
+                    }else if(puzzle.size() + line.length() + 1 > MAX_REQUEST_BYTES){
+                        tooLong = true;
+                    }else{
+                        puzzle.write(line.getBytes(StandardCharsets.ISO_8859_1));
+                        puzzle.write('\n');
+                    }
+                    continue;
+                }
+                if(puzzle.size() == 0 && !tooLong){
+                    continue;
+                }
+                number++;
+                String id = name == null || name.isEmpty() ? String.valueOf(number) : name;
+                Request request = new Request(id, tooLong ? new byte[0] : puzzle.toByteArray(), tooLong ? 0 : puzzle.size());
+                puzzle.reset();
+                name = null;
+                tooLong = false;
+                submit(request, writer, pending);
+            }while(line != null);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }finally{
+            pending.arriveAndAwaitAdvance();
+        }
+    }
+
+    private void submit(Request request, Writer writer, Phaser pending) throws InterruptedException {
+        slots.acquire();
+        pending.register();
+        synchronized(this){
+            requests++;
+        }
+        workers.execute(() -> {
+            try{
+                String response;
+                try{
+                    response = solve(request);
+                }catch(Throwable e){
+                    response = failed(request, e);
+                }
+                respond(writer, response);
+            }finally{
+                pending.arriveAndDeregister();
+                slots.release();
+            }
+        });
+    }
+
+    private String solve(Request request){
+        FlowGame game = new FlowGame();
+        game.engine = engine;
+        game.cache = cache;
+        // the pool keeps the cores busy with whole requests
+        game.encodeThreads = 1;
+        String status;
+        String detail = "";
+        StringBuilder response = new StringBuilder();
+        if(request.length == 0 || !game.parsePuzzle(ByteBuffer.wrap(request.puzzle), 0, request.length)){
+            status = "invalid";
+        }else{
+            long remaining = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - request.received);
+            SolveStats stats = null;
+            if(remaining > 0){
+                ScheduledFuture<?> alarm = timer.schedule(game::stop, remaining, TimeUnit.MILLISECONDS);
+                stats = game.reduceToSAT();
+                alarm.cancel(false);
+            }
+            if(stats != null && stats.isSolved()){
+                status = "solved";
+                response.append(game.solution);
+            }else if(stats == null || game.stopped){
+                status = "timeout";
+            }else{
+                status = "unsolved";
+                detail = stats.rejected() != PreCheck.Reason.OK ? " " + stats.rejected().name().toLowerCase()
+                        : " no-solution";
+            }
+        }
+        long nanos = System.nanoTime() - request.received;
+        record(status, nanos);
+        String header = status.equals("invalid") ? status + " " + request.id
+                : String.format("%s %s %.3f%s", status, request.id, nanos / 1e6, detail);
+        return header + "\n" + response + "\n";
+    }
+
+    // The response to a request whose solving threw, so that it still gets one.
+    private String failed(Request request, Throwable e){
+        long nanos = System.nanoTime() - request.received;
+        record("error", nanos);
+        return String.format("error %s %.3f %s%n%n", request.id, nanos / 1e6, e.getClass().getSimpleName());
+    }
+
+    private static void respond(Writer writer, String response){
+        synchronized(writer){
+            try{
+                writer.write(response);
+                writer.flush();
+            }catch(IOException e){
+                // the client went away; its remaining requests still finish
+            }
+        }
+    }
+
+    private synchronized void record(String status, long nanos){
+        switch(status){
+            case "solved":
+                solved++;
+                break;
+            case "unsolved":
+                unsolved++;
+                break;
+            case "timeout":
+                timeouts++;
+                break;
+            case "invalid":
+                invalid++;
+                break;
+            default:
+                errors++;
+        }
+        latencies[(int)(latencyCount++ % LATENCY_SAMPLES)] = nanos;
+    }
+
+    // Counters since start: requests read, how they ended, requests running
+    //  or queued, completions per second and latency percentiles over the
+    //  last LATENCY_SAMPLES requests.
+    public synchronized String stats(){
+        int samples = (int)Math.min(latencyCount, LATENCY_SAMPLES);
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        long done = solved + unsolved + timeouts + invalid + errors;
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return String.format("stats requests=%d solved=%d unsolved=%d timeouts=%d invalid=%d errors=%d"
+                        + " in-flight=%d throughput=%.1f/s p50=%.3fms p99=%.3fms",
+                requests, solved, unsolved, timeouts, invalid, errors, requests - done, done / seconds,
+                percentile(sorted, 50) / 1e6, percentile(sorted, 99) / 1e6);
+    }
+
+    private static long percentile(long[] sorted, int percent){
+        if(sorted.length == 0){
+            return 0;
+        }
+        return sorted[(int)Math.min(sorted.length - 1, (long)Math.ceil(sorted.length * percent / 100.0) - 1)];
+    }
+
+    // Accept connections on the loopback interface, one thread each, until
+    //  the process ends.
+    public void listen(int port) throws IOException {
+        try(ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())){
+            System.out.println("listening on " + server.getLocalSocketAddress());
+            while(true){
+                Socket socket = server.accept();
+                Thread connection = new Thread(() -> {
+                    try(Socket s = socket){
+                        serve(s.getInputStream(), s.getOutputStream());
+                    }catch(IOException e){
+                        // connection dropped
+                    }
+                }, "solver-connection");
+                connection.setDaemon(true);
+                connection.start();
+            }
+        }
+    }
+
+    public void shutdown(){
+        workers.shutdown();
+        timer.shutdownNow();
+    }
+
+    // Usage: SolverServer [--port=n] [--threads=n] [--queue=n] [--timeout=ms] [--bitboard] [--cache[=file]]
+    //  Without --port, serves stdin and stdout until stdin ends.
+    public static void main(String[] args){
+        int port = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queueDepth = 4 * threads;
+        long timeout = 10_000;
+        FlowGame.Engine engine = FlowGame.Engine.SAT;
+        SolutionCache cache = null;
+        try{
+            for(String arg : args){
+                if(arg.startsWith("--port=")){
+                    port = Integer.parseInt(arg.substring("--port=".length()));
+                }else if(arg.startsWith("--threads=")){
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                }else if(arg.startsWith("--queue=")){
+                    queueDepth = Integer.parseInt(arg.substring("--queue=".length()));
+                }else if(arg.startsWith("--timeout=")){
+                    timeout = Long.parseLong(arg.substring("--timeout=".length()));
+                }else if(arg.equals("--bitboard")){
+                    engine = FlowGame.Engine.BITBOARD;
+                }else if(arg.startsWith("--cache")){
+                    cache = FlowGame.openCache(arg);
+                }else{
+                    System.out.println("Usage: SolverServer [--port=n] [--threads=n] [--queue=n] [--timeout=ms]"
+                            + " [--bitboard] [--cache[=file]]");
+                    return;
+                }
+            }
+        }catch(IOException e){
+            System.out.println("Cannot open the cache: " + e.getMessage());
+            return;
+        }
+
+        SolverServer server;
+        try{
+            server = new SolverServer(threads, queueDepth, timeout);
+        }catch(IllegalArgumentException e){
+            System.out.println(e.getMessage());
+            if(cache != null){
+                try{
+                    cache.close();
+                }catch(IOException closing){
+                    System.out.println("Cannot write the cache: " + closing.getMessage());
+                }
+            }
+            return;
+        }
+        server.engine = engine;
+        server.cache = cache;
+        try{
+            if(port >= 0){
+                server.listen(port);
+            }else{
+                // responses own stdout; anything else printed goes to stderr
+                PrintStream out = System.out;
+                System.setOut(System.err);
+                server.serve(System.in, out);
+                System.err.println(server.stats());
+            }
+        }catch(IOException e){
+            System.err.println("Server stopped: " + e.getMessage());
+        }finally{
+            server.shutdown();
+            if(cache != null){
+                try{
+                    cache.close();
+                }catch(IOException e){
+                    System.err.println("Cannot write the cache: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
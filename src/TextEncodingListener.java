@@ -0,0 +1,42 @@
+import java.io.PrintStream;
+
+// Prints encoder diagnostics as plain text lines, for debugging.
+public class TextEncodingListener implements EncodingListener {
+    PrintStream out;
+    boolean trace;
+
+    public TextEncodingListener(PrintStream out, boolean trace){
+        this.out = out;
+        this.trace = trace;
+    }
+
+    @Override
+    public void variables(String category, int count){
+        out.println("variables  " + category + ": " + count);
+    }
+
+    @Override
+    public void clauses(String category, int count){
+        out.println("clauses    " + category + ": " + count);
+    }
+
+    @Override
+    public void phase(String phase, long nanos){
+        out.printf("phase      %s: %.3f ms%n", phase, nanos / 1e6);
+    }
+
+    @Override
+    public boolean tracing(){
+        return trace;
+    }
+
+    @Override
+    public void cell(int i, int j, int[] directionTypes, int[] directionVars, int count){
+        StringBuilder line = new StringBuilder();
+        line.append("Position: [").append(i).append(", ").append(j).append("] ->");
+        for(int k = 0;k < count;k++){
+            line.append(' ').append(FlowGame.DIRECTION_CHARS.get(directionTypes[k])).append('=').append(directionVars[k]);
+        }
+        out.println(line);
+    }
+}
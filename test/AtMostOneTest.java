@@ -0,0 +1,33 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class AtMostOneTest {
+    // For every set size and every assignment of the set, the clauses with
+    //  their auxiliary variables free are satisfiable exactly when at most one
+    //  variable of the set is true.
+    @ParameterizedTest
+    @EnumSource(AtMostOne.Encoding.class)
+    void allowsExactlyTheAssignmentsWithAtMostOneTrue(AtMostOne.Encoding encoding){
+        for(int length = 1;length <= 9;length++){
+            int[] vars = new int[length];
+            for(int k = 0;k < length;k++){
+                vars[k] = k + 1;
+            }
+            ClauseStore clauses = new ClauseStore();
+            int next = AtMostOne.encode(vars, encoding, clauses, length + 1);
+            assertEquals(length + 1 + AtMostOne.auxiliaryCount(length, encoding), next, "length " + length);
+
+            for(int assignment = 0;assignment < 1 << length;assignment++){
+                SATSolver solver = new SATSolver(next - 1);
+                solver.addClauses(clauses);
+                for(int k = 0;k < length;k++){
+                    solver.addClause((assignment >> k & 1) != 0 ? vars[k] : -vars[k]);
+                }
+                int expected = Integer.bitCount(assignment) <= 1 ? SATSolver.SATISFIABLE : SATSolver.UNSATISFIABLE;
+                assertEquals(expected, solver.solve(), "length " + length + ", assignment " + assignment);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class BitboardSolverTest {
+    @Test
+    void solvesBundledPuzzles(){
+        for(String puzzle : TestPuzzles.SOLVABLE){
+            FlowGame game = new FlowGame();
+            game.engine = FlowGame.Engine.BITBOARD;
+            assertTrue(game.reduceToSAT(puzzle).isSolved(), puzzle);
+            assertNull(TestPuzzles.violation(game, game.solution), puzzle);
+        }
+    }
+
+    @Test
+    void provesUnsolvablePuzzles(){
+        FlowGame game = TestPuzzles.parse("A.B\n...\nB.A\n");
+        assertEquals(SATSolver.UNSATISFIABLE, BitboardSolver.of(game).solve());
+    }
+
+    // Out of nodes the engine hands the puzzle to SAT, which still solves it.
+    @Test
+    void fallsBackToSatPastItsNodeBudget(){
+        FlowGame game = new FlowGame();
+        game.engine = FlowGame.Engine.BITBOARD;
+        game.bitboardNodes = 10;
+        SolveStats stats = game.reduceToSAT("jumbo_14x14_01.txt");
+        assertTrue(stats.isSolved());
+        assertTrue(stats.ran[SolveStats.BITBOARD]);
+        assertTrue(stats.ran[SolveStats.SOLVE]);
+        assertNull(TestPuzzles.violation(game, game.solution));
+
+        BitboardSolver solver = BitboardSolver.of(game);
+        solver.nodeLimit = 10;
+        assertEquals(SATSolver.UNKNOWN, solver.solve());
+    }
+}
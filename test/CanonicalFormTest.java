@@ -0,0 +1,125 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CanonicalFormTest {
+    static final String PUZZLE = "A...B.\nC..A..\n..DB..\nC...D.\n";
+
+    @Test
+    void symmetriesAndRecoloringsShareTheFingerprint(){
+        CanonicalForm original = CanonicalForm.of(TestPuzzles.parse(PUZZLE));
+        for(String variant : variants(PUZZLE)){
+            CanonicalForm form = CanonicalForm.of(TestPuzzles.parse(variant));
+            assertEquals(original.fingerprint, form.fingerprint, variant);
+            assertArrayEquals(original.cells, form.cells, variant);
+        }
+    }
+
+    @Test
+    void differentPuzzlesDiffer(){
+        CanonicalForm original = CanonicalForm.of(TestPuzzles.parse(PUZZLE));
+        CanonicalForm moved = CanonicalForm.of(TestPuzzles.parse("A...B.\nC..A..\n..DB..\nC....D\n"));
+        assertNotEquals(original.fingerprint, moved.fingerprint);
+    }
+
+    // A solution taken to the canonical frame of one puzzle and back out in
+    //  the frame of any symmetric variant solves that variant.
+    @Test
+    void solutionsMapBetweenSymmetricPuzzles(){
+        FlowGame game = new FlowGame();
+        assertTrue(game.reduceToSAT("regular_7x7_01.txt").isSolved());
+        CanonicalForm form = CanonicalForm.of(game);
+        Solution canonical = form.toCanonical(game.solution);
+        Solution back = form.fromCanonical(canonical, game.colorLetters());
+        assertArrayEquals(game.solution.colors, back.colors);
+        assertArrayEquals(game.solution.flows, back.flows);
+
+        for(String variant : variants(text(game))){
+            FlowGame other = TestPuzzles.parse(variant);
+            CanonicalForm otherForm = CanonicalForm.of(other);
+            assertEquals(form.fingerprint, otherForm.fingerprint, variant);
+            assertNull(TestPuzzles.violation(other, otherForm.fromCanonical(canonical, other.colorLetters())), variant);
+        }
+    }
+
+    @Test
+    void cachedSolutionAnswersARotatedPuzzle(){
+        SolutionCache cache = new SolutionCache(SolutionCache.DEFAULT_MAX_BYTES);
+        FlowGame first = new FlowGame();
+        first.cache = cache;
+        assertTrue(first.reduceToSAT("regular_6x6_01.txt").isSolved());
+
+        for(String variant : variants(text(first))){
+            FlowGame other = TestPuzzles.parse(variant);
+            other.cache = cache;
+            SolveStats stats = other.reduceToSAT();
+            assertTrue(stats.isCached(), variant);
+            assertNull(TestPuzzles.violation(other, other.solution), variant);
+        }
+    }
+
+    // A stored solution that does not fit the puzzle its fingerprint names,
+    //  in size or at the endpoints, is not returned.
+    @Test
+    void solutionOfAnotherPuzzleIsAMiss(){
+        FlowGame game = new FlowGame();
+        assertTrue(game.reduceToSAT("regular_5x5_01.txt").isSolved());
+        Solution canonical = CanonicalForm.of(game).toCanonical(game.solution);
+
+        SolutionCache cache = new SolutionCache(SolutionCache.DEFAULT_MAX_BYTES);
+        for(String other : new String[]{PUZZLE, "A...A\nB...B\nC...C\nD...D\nE...E\n"}){
+            CanonicalForm form = CanonicalForm.of(TestPuzzles.parse(other));
+            cache.entries.put(form.fingerprint, canonical);
+            assertNull(cache.get(form), other);
+        }
+        assertEquals(2, cache.misses);
+        assertEquals(0, cache.hits);
+    }
+
+    static String text(FlowGame game){
+        char[] letters = game.colorLetters();
+        StringBuilder text = new StringBuilder();
+        for(int i = 0;i < game.rows();i++){
+            for(int j = 0;j < game.cols();j++){
+                int color = game.cells[i * game.cols() + j];
+                text.append(color == FlowGame.FREE ? '.' : letters[color]);
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    // The puzzle under each of the 8 symmetries, built by hand rather than
+    //  with CanonicalForm.map(), every other one also recolored.
+    static String[] variants(String puzzle){
+        String[] lines = puzzle.split("\n");
+        int rows = lines.length;
+        int cols = lines[0].length();
+        String[] variants = new String[8];
+        for(int s = 0;s < 8;s++){
+            boolean transpose = (s & 1) != 0;
+            int outRows = transpose ? cols : rows;
+            int outCols = transpose ? rows : cols;
+            StringBuilder text = new StringBuilder();
+            for(int i = 0;i < outRows;i++){
+                for(int j = 0;j < outCols;j++){
+                    int r = (s & 2) != 0 ? outRows - 1 - i : i;
+                    int c = (s & 4) != 0 ? outCols - 1 - j : j;
+                    char letter = transpose ? lines[c].charAt(r) : lines[r].charAt(c);
+                    text.append(s % 2 == 1 && letter != '.' ? recolor(letter) : letter);
+                }
+                text.append('\n');
+            }
+            variants[s] = text.toString();
+        }
+        return variants;
+    }
+
+    private static char recolor(char letter){
+        return Character.isUpperCase(letter) ? Character.toLowerCase(letter) : Character.toUpperCase(letter);
+    }
+}
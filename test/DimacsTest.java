@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DimacsTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void writerAndReaderRoundTrip() throws IOException {
+        Random random = new Random(7);
+        ClauseStore clauses = new ClauseStore();
+        int variables = 1_000_000;
+        // enough clauses to cross the reader's and writer's buffer boundaries
+        for(int k = 0;k < 20_000;k++){
+            int length = 1 + random.nextInt(6);
+            for(int n = 0;n < length;n++){
+                clauses.addLiteral((1 + random.nextInt(variables)) * (random.nextBoolean() ? 1 : -1));
+            }
+            clauses.endClause();
+        }
+        Path file = directory.resolve("random.cnf");
+        DimacsWriter.write(file, variables, clauses);
+
+        ClauseStore read = new ClauseStore();
+        assertEquals(variables, DimacsReader.read(file, read));
+        assertArrayEquals(TestPuzzles.clauses(clauses), TestPuzzles.clauses(read));
+    }
+
+    @Test
+    void patchedHeaderCountsStreamedClauses() throws IOException {
+        Path file = directory.resolve("streamed.cnf");
+        try(DimacsWriter writer = new DimacsWriter(file)){
+            writer.add(1, -2);
+            writer.add(-1, 2, 3);
+            writer.add(-3);
+            writer.setVariableCount(3);
+        }
+        ClauseStore read = new ClauseStore();
+        assertEquals(3, DimacsReader.read(file, read));
+        assertArrayEquals(new int[][]{{1, -2}, {-1, 2, 3}, {-3}}, TestPuzzles.clauses(read));
+    }
+
+    @Test
+    void exportedPuzzleIsSatisfiable() throws IOException {
+        FlowGame game = new FlowGame();
+        game.parsePuzzle("regular_5x5_01.txt");
+        Path file = directory.resolve("regular_5x5_01.cnf");
+        game.exportDIMACS(file);
+
+        ClauseStore read = new ClauseStore();
+        SATSolver solver = new SATSolver(DimacsReader.read(file, read));
+        solver.addClauses(read);
+        assertEquals(SATSolver.SATISFIABLE, solver.solve());
+    }
+}
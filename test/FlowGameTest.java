@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class FlowGameTest {
+    @Test
+    void parsesRectangularPuzzlesWithAnyLineBreaks(){
+        FlowGame game = TestPuzzles.parse("A.B\r\n...\r\nA.B\r\n");
+        assertNotNull(game);
+        assertEquals(3, game.rows());
+        assertEquals(3, game.cols());
+        assertArrayEquals(new byte[]{0, FlowGame.FREE, 1, FlowGame.FREE, FlowGame.FREE, FlowGame.FREE, 0,
+                FlowGame.FREE, 1}, game.cells);
+        assertNotNull(TestPuzzles.parse("A..A\nB..B\n"));
+    }
+
+    @Test
+    void rejectsColorsWithoutExactlyTwoEndpoints(){
+        assertNull(TestPuzzles.parse("A..\n...\nB.B\n"));
+        assertNull(TestPuzzles.parse("AAA\n...\n...\n"));
+        assertNull(TestPuzzles.parse("A.A\n.A.\nA.A\n"));
+    }
+
+    @Test
+    void rejectsRaggedRows(){
+        assertNull(TestPuzzles.parse("A.A\n..\nB.B\n"));
+    }
+
+    // One game solves puzzle after puzzle; a puzzle that does not load is
+    //  not answered with what is left of the one before.
+    @Test
+    void solvesPuzzleAfterPuzzle(){
+        FlowGame game = new FlowGame();
+        for(String puzzle : new String[]{"regular_5x5_01.txt", "regular_9x9_01.txt", "regular_6x6_01.txt"}){
+            assertTrue(game.reduceToSAT(puzzle).isSolved(), puzzle);
+            assertNull(TestPuzzles.violation(game, game.solution), puzzle);
+        }
+        assertFalse(game.reduceToSAT("missing.txt").isSolved());
+    }
+
+    @Test
+    void solvesRectangularPuzzles(){
+        for(String puzzle : new String[]{"A..A\nB..B\n", "AB\n..\n..\nAB\n"}){
+            FlowGame game = TestPuzzles.parse(puzzle);
+            assertTrue(game.reduceToSAT().isSolved(), puzzle);
+            assertNull(TestPuzzles.violation(game, game.solution), puzzle);
+        }
+    }
+
+    // A game stopped before it solves gives up on every engine; the bitboard
+    //  search does not fall back to SAT.
+    @Test
+    void stoppedGameGivesUp(){
+        for(int engine = 0;engine < 3;engine++){
+            FlowGame game = new FlowGame();
+            if(engine == 1){
+                game.engine = FlowGame.Engine.BITBOARD;
+            }else if(engine == 2){
+                game.portfolio = 2;
+            }
+            game.stop();
+            SolveStats stats = game.reduceToSAT("regular_9x9_01.txt");
+            assertFalse(stats.isSolved(), "engine " + engine);
+            assertNull(game.solution, "engine " + engine);
+            assertEquals(engine != 1, stats.ran[SolveStats.SOLVE], "engine " + engine);
+        }
+    }
+}
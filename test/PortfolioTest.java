@@ -0,0 +1,55 @@
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PortfolioTest {
+    @Test
+    void raceSolvesAndReportsTheWinner(){
+        FlowGame game = new FlowGame();
+        game.portfolio = 3;
+        SolveStats stats = game.reduceToSAT("regular_9x9_01.txt");
+        assertTrue(stats.isSolved());
+        assertNull(TestPuzzles.violation(game, game.solution));
+        assertNotNull(stats.winner());
+        assertTrue(stats.winnerNanos() > 0);
+    }
+
+    // A racer that throws, here on its missing encoding, loses; the others
+    //  still decide the race.
+    @Test
+    void failedRacerLoses(){
+        Portfolio.Config broken = new Portfolio.Config(null, 1, 0, false, 100);
+        Portfolio.Config working = Portfolio.defaults(1).configs.get(0);
+        FlowGame game = encoded();
+        Portfolio portfolio = new Portfolio(List.of(broken, working));
+        FlowGame won = portfolio.race(game, game.numberOfVariables);
+        assertNotNull(won);
+        assertNotNull(won.model);
+        assertSame(working, portfolio.winner);
+    }
+
+    @Test
+    void raceFailsWhenEveryRacerFails(){
+        Portfolio.Config broken = new Portfolio.Config(null, 1, 0, false, 100);
+        FlowGame game = encoded();
+        Portfolio portfolio = new Portfolio(List.of(broken, broken));
+        assertThrows(IllegalStateException.class, () -> portfolio.race(game, game.numberOfVariables));
+    }
+
+    // A puzzle encoded pairwise, which adds no variables after the direction
+    //  variables, so every racer can re-encode from numberOfVariables.
+    private static FlowGame encoded(){
+        FlowGame game = new FlowGame();
+        game.parsePuzzle("regular_7x7_01.txt");
+        game.makeColorVariables();
+        game.makeDirectionVariables(game.numberOfVariables);
+        game.makeColorClauses();
+        game.makeDirectionClauses();
+        return game;
+    }
+}
@@ -0,0 +1,62 @@
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PropagationTest {
+    // Propagation keeps every solution: a solution found without it uses only
+    //  colors and direction types that stay in the propagated domains.
+    @Test
+    void keepsTheSolutionsOfSolvablePuzzles(){
+        for(String puzzle : TestPuzzles.SOLVABLE){
+            FlowGame game = new FlowGame();
+            game.propagate = false;
+            assertTrue(game.reduceToSAT(puzzle).isSolved(), puzzle);
+            assertNull(TestPuzzles.violation(game, game.solution), puzzle);
+
+            Propagation propagation = Propagation.run(game);
+            assertFalse(propagation.contradiction, puzzle);
+            Solution solution = game.solution;
+            int[] endpoints = game.endpointColors();
+            for(int cell = 0;cell < solution.colors.length;cell++){
+                assertTrue(propagation.hasColor(cell, solution.colors[cell]), puzzle + " cell " + cell);
+                if(endpoints[cell] < 0){
+                    assertTrue(propagation.hasType(cell, type(solution.flows[cell])), puzzle + " cell " + cell);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsAnEndpointWithNoNeighborOfItsColor(){
+        // every neighbor of either A is a B endpoint
+        FlowGame game = TestPuzzles.parse("AB\nBA\n");
+        assertTrue(Propagation.run(game).contradiction);
+    }
+
+    @Test
+    void agreesWithTheSolverOnUnsolvablePuzzles(){
+        FlowGame propagated = new FlowGame();
+        assertFalse(propagated.reduceToSAT("unsolvable_cross.txt").isSolved());
+        FlowGame plain = new FlowGame();
+        plain.propagate = false;
+        assertFalse(plain.reduceToSAT("unsolvable_cross.txt").isSolved());
+
+        // a single color: its one variable per cell still needs its clause
+        for(boolean propagate : new boolean[]{true, false}){
+            FlowGame game = TestPuzzles.parse("A.A\n...\n...\n");
+            game.propagate = propagate;
+            assertFalse(game.reduceToSAT().isSolved(), "propagate " + propagate);
+        }
+    }
+
+    private static int type(int flow){
+        for(int m = 0;m < FlowGame.DIRECTION_TYPES.length;m++){
+            if(FlowGame.DIRECTION_TYPES[m] == flow){
+                return m;
+            }
+        }
+        throw new IllegalArgumentException("not a path cell flow: " + flow);
+    }
+}
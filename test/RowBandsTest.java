@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RowBandsTest {
+    static final int SIZE = 24;
+
+    @TempDir
+    Path directory;
+
+    // Encoding in bands on several threads gives the clauses, and the
+    //  numbering, of one pass over all rows, for every at-most-one encoding
+    //  and with or without propagated domains.
+    @Test
+    void bandsEncodeExactlyLikeOnePass(){
+        for(AtMostOne.Encoding encoding : AtMostOne.Encoding.values()){
+            for(boolean propagate : new boolean[]{false, true}){
+                FlowGame single = encode(1, encoding, propagate);
+                FlowGame banded = encode(4, encoding, propagate);
+                String what = encoding + (propagate ? " propagated" : "");
+                assertEquals(1, single.bandCount(), what);
+                assertTrue(banded.bandCount() > 1, what);
+                assertEquals(single.numberOfVariables, banded.numberOfVariables, what);
+                assertArrayEquals(TestPuzzles.clauses(single.colorClauses), TestPuzzles.clauses(banded.colorClauses), what);
+                assertArrayEquals(TestPuzzles.clauses(single.directionClauses), TestPuzzles.clauses(banded.directionClauses),
+                        what);
+            }
+        }
+    }
+
+    // The same through a sink that is not a ClauseStore.
+    @Test
+    void bandsExportTheSameDimacsBytes() throws IOException {
+        Path single = directory.resolve("single.cnf");
+        Path banded = directory.resolve("banded.cnf");
+        game(1).exportDIMACS(single);
+        game(4).exportDIMACS(banded);
+        assertArrayEquals(Files.readAllBytes(single), Files.readAllBytes(banded));
+    }
+
+    @Test
+    void bandedPuzzleSolves(){
+        FlowGame game = game(4);
+        assertTrue(game.reduceToSAT().isSolved());
+        assertNull(TestPuzzles.violation(game, game.solution));
+    }
+
+    private static FlowGame encode(int threads, AtMostOne.Encoding encoding, boolean propagate){
+        FlowGame game = game(threads);
+        game.colorEncoding = encoding;
+        if(propagate){
+            game.propagation = Propagation.run(game);
+        }
+        game.makeColorVariables();
+        game.makeDirectionVariables(game.numberOfVariables);
+        game.makeColorClauses();
+        game.makeDirectionClauses();
+        return game;
+    }
+
+    // A SIZE x SIZE puzzle, above FlowGame.PARALLEL_CELLS, whose color i
+    //  runs along row i from end to end.
+    private static FlowGame game(int threads){
+        StringBuilder text = new StringBuilder();
+        for(int i = 0;i < SIZE;i++){
+            char[] row = new char[SIZE];
+            Arrays.fill(row, '.');
+            row[0] = (char)('A' + i);
+            row[SIZE - 1] = (char)('A' + i);
+            text.append(row).append('\n');
+        }
+        FlowGame game = TestPuzzles.parse(text.toString());
+        game.encodeThreads = threads;
+        return game;
+    }
+}
@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class SATSolverTest {
+    @Test
+    void modelSatisfiesEveryClause(){
+        int[][] clauses = {{1, 2}, {-1, 3}, {-2, -3}, {-3, 4}, {2, -4, 1}};
+        SATSolver solver = new SATSolver(4);
+        for(int[] clause : clauses){
+            solver.addClause(clause);
+        }
+        assertEquals(SATSolver.SATISFIABLE, solver.solve());
+        assertTrue(satisfies(solver, clauses));
+    }
+
+    @Test
+    void contradictoryUnitsAreUnsatisfiable(){
+        SATSolver solver = new SATSolver(1);
+        solver.addClause(1);
+        solver.addClause(-1);
+        assertEquals(SATSolver.UNSATISFIABLE, solver.solve());
+    }
+
+    @Test
+    void pigeonholeIsUnsatisfiable(){
+        // 5 pigeons in 4 holes; variable p * 4 + h + 1 puts pigeon p in hole h
+        int pigeons = 5;
+        int holes = 4;
+        SATSolver solver = new SATSolver(pigeons * holes);
+        for(int p = 0;p < pigeons;p++){
+            int[] somewhere = new int[holes];
+            for(int h = 0;h < holes;h++){
+                somewhere[h] = p * holes + h + 1;
+            }
+            solver.addClause(somewhere);
+        }
+        for(int h = 0;h < holes;h++){
+            for(int p = 0;p < pigeons;p++){
+                for(int q = p + 1;q < pigeons;q++){
+                    solver.addClause(-(p * holes + h + 1), -(q * holes + h + 1));
+                }
+            }
+        }
+        assertEquals(SATSolver.UNSATISFIABLE, solver.solve());
+    }
+
+    @Test
+    void randomFormulasAgreeWithBruteForce(){
+        Random random = new Random(42);
+        int variables = 10;
+        for(int round = 0;round < 300;round++){
+            int[][] clauses = new int[38 + random.nextInt(12)][3];
+            for(int[] clause : clauses){
+                for(int k = 0;k < clause.length;k++){
+                    clause[k] = (1 + random.nextInt(variables)) * (random.nextBoolean() ? 1 : -1);
+                }
+            }
+            SATSolver solver = new SATSolver(variables);
+            for(int[] clause : clauses){
+                solver.addClause(clause);
+            }
+            int status = solver.solve();
+            assertEquals(bruteForce(variables, clauses) ? SATSolver.SATISFIABLE : SATSolver.UNSATISFIABLE, status,
+                    "round " + round);
+            if(status == SATSolver.SATISFIABLE){
+                assertTrue(satisfies(solver, clauses), "round " + round);
+            }
+        }
+    }
+
+    @Test
+    void stoppedSolverGivesUp(){
+        SATSolver solver = new SATSolver(3);
+        solver.addClause(1, 2, 3);
+        solver.addClause(-1, -2);
+        solver.stop();
+        assertEquals(SATSolver.UNKNOWN, solver.solve());
+    }
+
+    static boolean satisfies(SATSolver solver, int[][] clauses){
+        for(int[] clause : clauses){
+            boolean satisfied = false;
+            for(int literal : clause){
+                satisfied |= solver.value(Math.abs(literal)) == literal > 0;
+            }
+            if(!satisfied){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean bruteForce(int variables, int[][] clauses){
+        for(int assignment = 0;assignment < 1 << variables;assignment++){
+            boolean all = true;
+            for(int[] clause : clauses){
+                boolean satisfied = false;
+                for(int literal : clause){
+                    boolean value = (assignment >> (Math.abs(literal) - 1) & 1) != 0;
+                    satisfied |= value == literal > 0;
+                }
+                if(!satisfied){
+                    all = false;
+                    break;
+                }
+            }
+            if(all){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SolutionCacheTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopenedFileAnswersEarlierPuzzles() throws IOException {
+        Path file = directory.resolve("solutions.cache");
+        SolutionCache cache = SolutionCache.open(file, SolutionCache.DEFAULT_MAX_BYTES);
+        CanonicalForm first = solve(cache, "regular_5x5_01.txt");
+        CanonicalForm second = solve(cache, "regular_7x7_01.txt");
+        cache.close();
+
+        SolutionCache reopened = SolutionCache.open(file, SolutionCache.DEFAULT_MAX_BYTES);
+        assertEquals(2, reopened.size());
+        assertNotNull(reopened.get(first));
+        assertNotNull(reopened.get(second));
+        reopened.close();
+    }
+
+    // A header counting more bytes than the records hold, or cutting the
+    //  last record short, loses only what is incomplete; the next solution
+    //  is appended after the last complete record.
+    @Test
+    void damagedTailIsDroppedAndOverwritten() throws IOException {
+        Path file = directory.resolve("solutions.cache");
+        SolutionCache cache = SolutionCache.open(file, SolutionCache.DEFAULT_MAX_BYTES);
+        solve(cache, "regular_5x5_01.txt");
+        solve(cache, "regular_7x7_01.txt");
+        cache.close();
+        long used = used(file);
+
+        setUsed(file, used + 1000);
+        cache = SolutionCache.open(file, SolutionCache.DEFAULT_MAX_BYTES);
+        assertEquals(2, cache.size());
+        cache.close();
+        assertEquals(used, used(file));
+
+        setUsed(file, used - 5);
+        cache = SolutionCache.open(file, SolutionCache.DEFAULT_MAX_BYTES);
+        assertEquals(1, cache.size());
+        CanonicalForm third = solve(cache, "regular_6x6_01.txt");
+        cache.close();
+
+        cache = SolutionCache.open(file, SolutionCache.DEFAULT_MAX_BYTES);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(third));
+        cache.close();
+    }
+
+    @Test
+    void oneCacheAtATimeHoldsTheFile() throws IOException {
+        Path file = directory.resolve("solutions.cache");
+        SolutionCache cache = SolutionCache.open(file, SolutionCache.DEFAULT_MAX_BYTES);
+        assertThrows(IOException.class, () -> SolutionCache.open(file, SolutionCache.DEFAULT_MAX_BYTES));
+        cache.close();
+        SolutionCache.open(file, SolutionCache.DEFAULT_MAX_BYTES).close();
+    }
+
+    // Solve the puzzle through cache, which then holds its solution.
+    private static CanonicalForm solve(SolutionCache cache, String puzzle){
+        FlowGame game = new FlowGame();
+        game.cache = cache;
+        assertTrue(game.reduceToSAT(puzzle).isSolved(), puzzle);
+        return CanonicalForm.of(game);
+    }
+
+    private static long used(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer header = ByteBuffer.allocate(SolutionCache.HEADER);
+            channel.read(header, 0);
+            return header.getLong(Integer.BYTES);
+        }
+    }
+
+    private static void setUsed(Path file, long used) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)){
+            ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES).putLong(0, used);
+            channel.write(bytes, Integer.BYTES);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class SolutionTest {
+    @Test
+    void writeAndReadRoundTrip(){
+        FlowGame game = new FlowGame();
+        assertTrue(game.reduceToSAT("regular_9x9_01.txt").isSolved());
+        roundTrip(game.solution);
+
+        // above PACKED_COLORS, color and flow take a byte each
+        char[] letters = new char[20];
+        for(int c = 0;c < letters.length;c++){
+            letters[c] = (char)('A' + c);
+        }
+        Solution wide = new Solution(5, 8, letters);
+        for(int cell = 0;cell < wide.colors.length;cell++){
+            wide.colors[cell] = (byte)(cell % letters.length);
+            wide.flows[cell] = (byte)(cell % 16);
+        }
+        roundTrip(wide);
+        roundTrip(new Solution(2, 3, null));
+    }
+
+    @Test
+    void readRejectsDamagedBytes(){
+        FlowGame game = new FlowGame();
+        assertTrue(game.reduceToSAT("regular_5x5_01.txt").isSolved());
+        ByteBuffer bytes = ByteBuffer.allocate(game.solution.byteSize());
+        game.solution.write(bytes);
+
+        ByteBuffer truncated = bytes.duplicate().position(0).limit(bytes.capacity() - 1);
+        assertThrows(IllegalArgumentException.class, () -> Solution.read(truncated));
+        assertThrows(IllegalArgumentException.class, () -> Solution.read(ByteBuffer.allocate(64)));
+        ByteBuffer huge = bytes.duplicate().position(0);
+        huge.putInt(0, Integer.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> Solution.read(huge));
+    }
+
+    // Each cell is its endpoint letter or the glyph of its flow, and a buffer
+    //  that fills up many times over still draws every solution whole.
+    @Test
+    void rendererDrawsEveryCell() throws IOException {
+        FlowGame game = new FlowGame();
+        assertTrue(game.reduceToSAT("regular_7x7_01.txt").isSolved());
+        Solution solution = game.solution;
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0;i < solution.rows;i++){
+            for(int j = 0;j < solution.cols;j++){
+                String glyph = FlowGame.DIRECTION_CHARS.get(solution.flow(i, j));
+                expected.append(glyph == null ? String.valueOf(solution.colorLetters[solution.color(i, j)]) : glyph);
+            }
+            expected.append('\n');
+        }
+        assertEquals(expected.toString(), render(solution, false, 1));
+
+        String once = render(solution, true, 1);
+        assertTrue(once.contains("\u001b["), once);
+        assertEquals(once.repeat(2000), render(solution, true, 2000));
+    }
+
+    private static void roundTrip(Solution solution){
+        ByteBuffer bytes = ByteBuffer.allocate(solution.byteSize() + 3);
+        solution.write(bytes);
+        assertEquals(solution.byteSize(), bytes.position());
+        Solution read = Solution.read(bytes.flip());
+        assertEquals(solution.byteSize(), bytes.position());
+        assertEquals(solution.rows, read.rows);
+        assertEquals(solution.cols, read.cols);
+        assertArrayEquals(solution.colors, read.colors);
+        assertArrayEquals(solution.flows, read.flows);
+        assertArrayEquals(solution.colorLetters, read.colorLetters);
+    }
+
+    private static String render(Solution solution, boolean ansi, int times) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SolutionRenderer renderer = new SolutionRenderer(out, ansi);
+        for(int k = 0;k < times;k++){
+            renderer.render(solution);
+        }
+        renderer.flush();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,45 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class SolverServerTest {
+    @Test
+    void answersEveryRequest() throws IOException {
+        SolverServer server = new SolverServer(2, 1, 10_000);
+        String responses = serve(server, "#first\nA..A\nB..B\n\nA.\n..\n\nAB\nBA\n\n");
+        server.shutdown();
+
+        assertTrue(responses.contains("solved first "), responses);
+        assertTrue(responses.contains("invalid 2\n"), responses);
+        assertTrue(responses.contains("unsolved 3 "), responses);
+        assertTrue(server.stats().contains("requests=3 solved=1 unsolved=1 timeouts=0 invalid=1 errors=0 in-flight=0"),
+                server.stats());
+    }
+
+    // A request read after its timeout has run out is not solved at all.
+    @Test
+    void lateRequestTimesOut() throws IOException {
+        SolverServer server = new SolverServer(1, 0, 0);
+        String responses = serve(server, "A..A\nB..B\n\n");
+        server.shutdown();
+        assertTrue(responses.startsWith("timeout 1 "), responses);
+    }
+
+    @Test
+    void rejectsMoreRequestsInFlightThanAConnectionTracks(){
+        assertThrows(IllegalArgumentException.class, () -> new SolverServer(2, SolverServer.MAX_IN_FLIGHT - 1, 1000));
+        new SolverServer(1, SolverServer.MAX_IN_FLIGHT - 1, 1000).shutdown();
+    }
+
+    private static String serve(SolverServer server, String requests) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        server.serve(new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,108 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Helpers shared by the tests: games parsed from text, and an independent
+//  check that a solution really solves its puzzle.
+final class TestPuzzles {
+    // the bundled puzzles that have a solution
+    static final String[] SOLVABLE = {
+            "regular_5x5_01.txt", "regular_6x6_01.txt", "regular_7x7_01.txt", "regular_8x8_01.txt",
+            "regular_9x9_01.txt", "extreme_8x8_01.txt", "extreme_9x9_01.txt", "extreme_10x10_01.txt",
+            "jumbo_10x10_01.txt", "jumbo_11x11_01.txt", "jumbo_14x14_01.txt"};
+
+    private TestPuzzles(){
+    }
+
+    // A game holding the puzzle text, one row per line, or null if it does
+    //  not parse.
+    static FlowGame parse(String text){
+        FlowGame game = new FlowGame();
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return game.parsePuzzle(ByteBuffer.wrap(bytes), 0, bytes.length) ? game : null;
+    }
+
+    // Null if solution solves the puzzle of game, else what is wrong with it:
+    //  every endpoint keeps its color and leaves by one side, every free cell
+    //  by two, neighbors agree on the sides and colors they share, and the
+    //  paths from the endpoints cover the grid, so there is no detached loop.
+    static String violation(FlowGame game, Solution solution){
+        int rows = game.rows();
+        int cols = game.cols();
+        if(solution.rows != rows || solution.cols != cols){
+            return "solution is " + solution.rows + " x " + solution.cols;
+        }
+        for(int cell = 0;cell < rows * cols;cell++){
+            int flow = solution.flows[cell];
+            boolean endpoint = game.cells[cell] != FlowGame.FREE;
+            if(Integer.bitCount(flow) != (endpoint ? 1 : 2)){
+                return "cell " + cell + " has flow " + flow;
+            }
+            if(endpoint && solution.colors[cell] != game.cells[cell]){
+                return "endpoint " + cell + " changed color";
+            }
+            for(int[] delta : FlowGame.DELTAS){
+                if((flow & delta[0]) == 0){
+                    continue;
+                }
+                int i = cell / cols + delta[1];
+                int j = cell % cols + delta[2];
+                if(i < 0 || i >= rows || j < 0 || j >= cols){
+                    return "cell " + cell + " flows off the grid";
+                }
+                int neighbor = i * cols + j;
+                if((solution.flows[neighbor] & opposite(delta[0])) == 0){
+                    return "cell " + neighbor + " does not flow back to " + cell;
+                }
+                if(solution.colors[neighbor] != solution.colors[cell]){
+                    return "cells " + cell + " and " + neighbor + " differ in color";
+                }
+            }
+        }
+        boolean[] seen = new boolean[rows * cols];
+        int covered = 0;
+        for(int start = 0;start < rows * cols;start++){
+            if(game.cells[start] == FlowGame.FREE || seen[start]){
+                continue;
+            }
+            int previous = -1;
+            int cell = start;
+            while(cell >= 0){
+                seen[cell] = true;
+                covered++;
+                int next = -1;
+                for(int[] delta : FlowGame.DELTAS){
+                    if((solution.flows[cell] & delta[0]) != 0){
+                        int neighbor = (cell / cols + delta[1]) * cols + cell % cols + delta[2];
+                        if(neighbor != previous){
+                            next = neighbor;
+                        }
+                    }
+                }
+                previous = cell;
+                cell = next;
+            }
+        }
+        return covered == rows * cols ? null : (rows * cols - covered) + " cells in detached loops";
+    }
+
+    // The clauses of store as arrays, for comparing stores with assertArrayEquals.
+    static int[][] clauses(ClauseStore store){
+        int[][] clauses = new int[store.size()][];
+        for(int k = 0;k < store.size();k++){
+            clauses[k] = Arrays.copyOfRange(store.literals(), store.start(k), store.start(k) + store.length(k));
+        }
+        return clauses;
+    }
+
+    static int opposite(int bit){
+        for(int[] delta : FlowGame.DELTAS){
+            for(int[] other : FlowGame.DELTAS){
+                if(delta[0] == bit && other[1] == -delta[1] && other[2] == -delta[2]){
+                    return other[0];
+                }
+            }
+        }
+        throw new IllegalArgumentException("not a direction bit: " + bit);
+    }
+}